@@ -0,0 +1,103 @@
+package com.bitpay.cordova.qrscanner.benchmarks;
+
+import com.bitpay.cordova.qrscanner.FrameDecoder;
+import com.bitpay.cordova.qrscanner.ScanEngine;
+import com.google.zxing.PlanarYUVLuminanceSource;
+import com.google.zxing.Result;
+import org.json.JSONArray;
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Time to decode one preview frame of the synthetic corpus, per format set of the plugin, kind of
+ * code and distortion. Frames are decoded by the plugin's own {@link ScanEngine}, configured as by
+ * prepare() without options ("all": all formats, TRY_HARDER) or with "only-2d", including the
+ * crop to the default scan region. The found and missed counters show what the time buys: a format set
+ * which is faster because it gives up on half the frames is no improvement.
+ *
+ * <pre>
+ * mvn -f benchmarks/pom.xml package
+ * java -jar benchmarks/target/benchmarks.jar
+ * </pre>
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class DecodeBenchmark {
+
+    @Param({"all", "only-2d"})
+    public String formats;
+
+    @Param({"TWO_D", "ONE_D"})
+    public String codes;
+
+    @Param({"CLEAN", "NOISE", "BLUR", "ROTATED"})
+    public String distortion;
+
+    private FrameDecoder decoder;
+    private SyntheticCorpus.Frame[] frames;
+    private int next;
+
+    /**
+     * Frames with and without a result (the expected text), per iteration.
+     */
+    @State(Scope.Thread)
+    @AuxCounters(AuxCounters.Type.EVENTS)
+    public static class Outcome {
+        public long found;
+        public long missed;
+
+        @Setup(Level.Iteration)
+        public void clear() {
+            found = 0;
+            missed = 0;
+        }
+    }
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        JSONArray args = new JSONArray();
+        if ("only-2d".equals(formats))
+            args.put("only-2d");
+        else if (!"all".equals(formats))
+            throw new IllegalArgumentException("Unknown format set: " + formats);
+        ScanEngine engine = new ScanEngine();
+        engine.configure(args, true);
+        decoder = engine.newFrameDecoder();
+        List<SyntheticCorpus.Frame> corpus = SyntheticCorpus.generate(
+                SyntheticCorpus.Codes.valueOf(codes), SyntheticCorpus.Distortion.valueOf(distortion));
+        frames = corpus.toArray(new SyntheticCorpus.Frame[corpus.size()]);
+    }
+
+    @Benchmark
+    public Result decodeFrame(Outcome outcome) {
+        SyntheticCorpus.Frame frame = frames[next];
+        next = (next + 1) % frames.length;
+        // Wrapped like a preview frame, whose luminance plane the decoder reads in place
+        PlanarYUVLuminanceSource source = new PlanarYUVLuminanceSource(frame.luminance,
+                SyntheticCorpus.WIDTH, SyntheticCorpus.HEIGHT, 0, 0, SyntheticCorpus.WIDTH, SyntheticCorpus.HEIGHT, false);
+        Result result = decoder.decode(source);
+        if (result != null && frame.text.equals(result.getText()))
+            outcome.found++;
+        else
+            outcome.missed++;
+        return result;
+    }
+}
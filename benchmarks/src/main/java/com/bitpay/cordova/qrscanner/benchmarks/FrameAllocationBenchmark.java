@@ -0,0 +1,136 @@
+package com.bitpay.cordova.qrscanner.benchmarks;
+
+import com.bitpay.cordova.qrscanner.FrameDecoder;
+import com.bitpay.cordova.qrscanner.PlaneLuminanceSource;
+import com.bitpay.cordova.qrscanner.ScanEngine;
+import com.google.zxing.PlanarYUVLuminanceSource;
+import com.google.zxing.Result;
+import org.json.JSONArray;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.nio.ByteBuffer;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Memory allocated per decoded preview frame, in the steady state of a scan. Run with JMH's GC
+ * profiler and compare gc.alloc.rate.norm (bytes per frame):
+ *
+ * <pre>
+ * java -jar benchmarks/target/benchmarks.jar FrameAllocationBenchmark -prof gc
+ * </pre>
+ *
+ * "copy" hands each frame over like the legacy preview, as a new array wrapped in a new
+ * PlanarYUVLuminanceSource. "plane" hands it over like the camera2 backend: the luminance plane
+ * of a recycled (direct) buffer, turned upright by the source, which is moved on to each new
+ * frame with PlaneLuminanceSource.wrap. Both are decoded by a frame decoder of the scanning
+ * core, configured like DecodeBenchmark and cropped to the default scan region. The "empty"
+ * frame holds no code, the usual case while the user aims the camera; "code" holds a QR code.
+ *
+ * What "plane" still allocates is ZXing's own bookkeeping: with only-2d about 5 KB per frame,
+ * with all formats about 270 KB on an empty frame, almost all of it counters, guard patterns and
+ * reversed rows allocated by the 1D readers on every row they try. The frame sized buffers are
+ * reused. FrameAllocationTest keeps both below a bound.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class FrameAllocationBenchmark {
+
+    private static final int WIDTH = SyntheticCorpus.WIDTH;
+    private static final int HEIGHT = SyntheticCorpus.HEIGHT;
+
+    @Param({"all", "only-2d"})
+    public String formats;
+
+    @Param({"copy", "plane"})
+    public String source;
+
+    @Param({"empty", "code"})
+    public String frame;
+
+    private FrameDecoder decoder;
+    private byte[] luminance;
+    // The camera's two recycled buffers, in sensor orientation (turned by 90 degrees)
+    private final ByteBuffer[] planes = new ByteBuffer[2];
+    private PlaneLuminanceSource plane;
+    private int next;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        JSONArray args = new JSONArray();
+        if ("only-2d".equals(formats))
+            args.put("only-2d");
+        else if (!"all".equals(formats))
+            throw new IllegalArgumentException("Unknown format set: " + formats);
+        ScanEngine engine = new ScanEngine();
+        engine.configure(args, true);
+        decoder = engine.newFrameDecoder();
+        if ("code".equals(frame))
+            luminance = SyntheticCorpus.generate(SyntheticCorpus.Codes.TWO_D, SyntheticCorpus.Distortion.CLEAN).get(0).luminance;
+        else if ("empty".equals(frame))
+            luminance = emptyFrame();
+        else
+            throw new IllegalArgumentException("Unknown frame: " + frame);
+        for (int i = 0; i < planes.length; i++)
+            planes[i] = sensorPlane(luminance);
+        if (!"copy".equals(source) && !"plane".equals(source))
+            throw new IllegalArgumentException("Unknown source: " + source);
+    }
+
+    // Background with sensor noise
+    static byte[] emptyFrame() {
+        Random random = new Random(7);
+        byte[] frame = new byte[WIDTH * HEIGHT];
+        for (int i = 0; i < frame.length; i++)
+            frame[i] = (byte) Math.max(0, Math.min(255, (int) Math.round(190 + 12 * random.nextGaussian())));
+        return frame;
+    }
+
+    // A direct buffer with the frame in sensor orientation: stored turned counterclockwise, the source turns it back
+    static ByteBuffer sensorPlane(byte[] luminance) {
+        ByteBuffer plane = ByteBuffer.allocateDirect(WIDTH * HEIGHT);
+        for (int y = 0; y < HEIGHT; y++) {
+            for (int x = 0; x < WIDTH; x++)
+                plane.put((WIDTH - 1 - x) * HEIGHT + y, luminance[y * WIDTH + x]);
+        }
+        return plane;
+    }
+
+    // A source over the plane, as created by the camera2 backend
+    static PlaneLuminanceSource planeSource(ByteBuffer plane) {
+        return new PlaneLuminanceSource(plane, HEIGHT, 1, HEIGHT, WIDTH, 90);
+    }
+
+    // Moves the source on to the next plane, as the camera2 backend does for each frame
+    static boolean wrap(PlaneLuminanceSource source, ByteBuffer plane) {
+        return source.wrap(plane, HEIGHT, 1, HEIGHT, WIDTH, 90);
+    }
+
+    @Benchmark
+    public Result decodeFrame() {
+        if ("copy".equals(source)) {
+            byte[] copy = luminance.clone();
+            return decoder.decode(new PlanarYUVLuminanceSource(copy, WIDTH, HEIGHT, 0, 0, WIDTH, HEIGHT, false));
+        }
+        ByteBuffer buffer = planes[next];
+        next = (next + 1) % planes.length;
+        if (plane == null || !wrap(plane, buffer))
+            plane = planeSource(buffer);
+        return decoder.decode(plane);
+    }
+}
@@ -0,0 +1,264 @@
+package com.bitpay.cordova.qrscanner.benchmarks;
+
+import com.google.zxing.BarcodeFormat;
+import com.google.zxing.EncodeHintType;
+import com.google.zxing.MultiFormatWriter;
+import com.google.zxing.WriterException;
+import com.google.zxing.common.BitMatrix;
+import com.google.zxing.datamatrix.encoder.SymbolShapeHint;
+import com.google.zxing.oned.UPCEReader;
+import com.google.zxing.qrcode.decoder.ErrorCorrectionLevel;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+/**
+ * Preview frames with codes generated by the ZXing encoder, for every format the plugin decodes
+ * which ZXing can encode (not RSS-14, RSS Expanded and UPC/EAN extensions), at several sizes and
+ * versions, optionally degraded like real camera frames. Frames are VGA luminance, the size of
+ * the "fastest" preview resolution, and generated from fixed seeds, so every run decodes the
+ * same pixels.
+ */
+final class SyntheticCorpus {
+
+    static final int WIDTH = 640;
+    static final int HEIGHT = 480;
+
+    private static final int BACKGROUND = 190;
+    private static final int LIGHT = 220;
+    private static final int DARK = 40;
+    private static final int BAR_HEIGHT = 120;
+    // Outside of the default scan region, see ScanRegion.defaultBounds
+    private static final int MARGIN = Math.min(WIDTH, HEIGHT) / 10;
+
+    enum Codes {
+        // QR codes and Data Matrix
+        TWO_D,
+        // The linear formats
+        ONE_D
+    }
+
+    enum Distortion {
+        CLEAN,
+        // Gaussian sensor noise
+        NOISE,
+        // Slightly out of focus
+        BLUR,
+        // Held at an angle
+        ROTATED
+    }
+
+    static final class Frame {
+        final byte[] luminance;
+        final BarcodeFormat format;
+        // As decoded
+        final String text;
+
+        Frame(byte[] luminance, BarcodeFormat format, String text) {
+            this.luminance = luminance;
+            this.format = format;
+            this.text = text;
+        }
+    }
+
+    private static final class Code {
+        final BarcodeFormat format;
+        final String text;
+        final Map<EncodeHintType, Object> hints;
+
+        Code(BarcodeFormat format, String text, Map<EncodeHintType, Object> hints) {
+            this.format = format;
+            this.text = text;
+            this.hints = hints;
+        }
+    }
+
+    private SyntheticCorpus() {
+    }
+
+    static List<Frame> generate(Codes codes, Distortion distortion) {
+        List<Frame> frames = new ArrayList<>();
+        Random random = new Random(42);
+        if (codes == Codes.TWO_D) {
+            for (int version : new int[]{2, 7, 15}) {
+                Map<EncodeHintType, Object> hints = new EnumMap<>(EncodeHintType.class);
+                hints.put(EncodeHintType.QR_VERSION, version);
+                hints.put(EncodeHintType.ERROR_CORRECTION, ErrorCorrectionLevel.M);
+                hints.put(EncodeHintType.MARGIN, 0);
+                Code code = new Code(BarcodeFormat.QR_CODE, text(version * 6, random), hints);
+                addFrames(frames, code, new int[]{3, 5}, distortion, random);
+            }
+            for (int length : new int[]{8, 40, 120}) {
+                Map<EncodeHintType, Object> hints = new EnumMap<>(EncodeHintType.class);
+                hints.put(EncodeHintType.DATA_MATRIX_SHAPE, SymbolShapeHint.FORCE_SQUARE);
+                Code code = new Code(BarcodeFormat.DATA_MATRIX, text(length, random), hints);
+                addFrames(frames, code, new int[]{3, 5}, distortion, random);
+            }
+        } else {
+            Map<EncodeHintType, Object> hints = Collections.emptyMap();
+            List<Code> linear = new ArrayList<>();
+            linear.add(new Code(BarcodeFormat.CODE_128, "QRS-" + digits(8, random), hints));
+            linear.add(new Code(BarcodeFormat.CODE_39, "QRS" + digits(6, random), hints));
+            linear.add(new Code(BarcodeFormat.CODE_93, "QRS" + digits(6, random), hints));
+            linear.add(new Code(BarcodeFormat.CODABAR, "A" + digits(10, random) + "B", hints));
+            // A leading 0 would make it a UPC-A code
+            linear.add(new Code(BarcodeFormat.EAN_13, withCheckDigit("4" + digits(11, random)), hints));
+            linear.add(new Code(BarcodeFormat.EAN_8, withCheckDigit(digits(7, random)), hints));
+            linear.add(new Code(BarcodeFormat.UPC_A, withCheckDigit(digits(11, random)), hints));
+            String upcE = "0" + digits(6, random);
+            // The check digit of UPC-E is that of the UPC-A code it abbreviates
+            String upcA = withCheckDigit(UPCEReader.convertUPCEtoUPCA(upcE + "0").substring(0, 11));
+            linear.add(new Code(BarcodeFormat.UPC_E, upcE + upcA.charAt(11), hints));
+            for (Code code : linear)
+                addFrames(frames, code, new int[]{2, 3}, distortion, random);
+        }
+        return frames;
+    }
+
+    private static void addFrames(List<Frame> frames, Code code, int[] moduleSizes, Distortion distortion, Random random) {
+        BitMatrix matrix;
+        try {
+            matrix = new MultiFormatWriter().encode(code.text, code.format, 0, 0, code.hints);
+        } catch (WriterException e) {
+            throw new IllegalStateException("Unable to encode " + code.format + " " + code.text, e);
+        }
+        // The reader drops the start and stop characters of Codabar
+        String expected = code.format == BarcodeFormat.CODABAR ? code.text.substring(1, code.text.length() - 1) : code.text;
+        for (int moduleSize : moduleSizes) {
+            byte[] frame = render(matrix, code.format, moduleSize);
+            if (frame != null)
+                frames.add(new Frame(distort(frame, distortion, random), code.format, expected));
+        }
+    }
+
+    // The code centered on the frame, null if it doesn't fit
+    private static byte[] render(BitMatrix matrix, BarcodeFormat format, int moduleSize) {
+        boolean linear = format != BarcodeFormat.QR_CODE && format != BarcodeFormat.DATA_MATRIX;
+        int quietZone = 10 * moduleSize;
+        int codeWidth = matrix.getWidth() * moduleSize;
+        int codeHeight = linear ? BAR_HEIGHT : matrix.getHeight() * moduleSize;
+        if (codeWidth + 2 * quietZone > WIDTH - 2 * MARGIN || codeHeight + 2 * quietZone > HEIGHT - 2 * MARGIN)
+            return null;
+
+        byte[] frame = new byte[WIDTH * HEIGHT];
+        // A soft horizontal light falloff, as under a lamp
+        for (int y = 0; y < HEIGHT; y++) {
+            for (int x = 0; x < WIDTH; x++)
+                frame[y * WIDTH + x] = (byte) (BACKGROUND - Math.abs(x - WIDTH / 2) * 30 / WIDTH);
+        }
+        int left = (WIDTH - codeWidth) / 2;
+        int top = (HEIGHT - codeHeight) / 2;
+        for (int y = top - quietZone; y < top + codeHeight + quietZone; y++) {
+            for (int x = left - quietZone; x < left + codeWidth + quietZone; x++) {
+                int moduleX = Math.floorDiv(x - left, moduleSize);
+                int moduleY = linear ? 0 : Math.floorDiv(y - top, moduleSize);
+                boolean dark = x >= left && x < left + codeWidth && y >= top && y < top + codeHeight
+                        && matrix.get(moduleX, moduleY);
+                frame[y * WIDTH + x] = (byte) (dark ? DARK : LIGHT);
+            }
+        }
+        return frame;
+    }
+
+    private static byte[] distort(byte[] frame, Distortion distortion, Random random) {
+        switch (distortion) {
+            case NOISE:
+                return noise(frame, 12, random);
+            case BLUR:
+                return boxBlur(boxBlur(frame, 1), 1);
+            case ROTATED:
+                return rotate(frame, Math.toRadians(10));
+            default:
+                return frame;
+        }
+    }
+
+    private static byte[] noise(byte[] frame, double sigma, Random random) {
+        byte[] noisy = new byte[frame.length];
+        for (int i = 0; i < frame.length; i++)
+            noisy[i] = clamp((frame[i] & 0xff) + random.nextGaussian() * sigma);
+        return noisy;
+    }
+
+    // Box blur with the given radius, in both directions
+    private static byte[] boxBlur(byte[] frame, int radius) {
+        int[] horizontal = new int[frame.length];
+        for (int y = 0; y < HEIGHT; y++) {
+            for (int x = 0; x < WIDTH; x++) {
+                int sum = 0;
+                for (int dx = -radius; dx <= radius; dx++)
+                    sum += frame[y * WIDTH + Math.max(0, Math.min(WIDTH - 1, x + dx))] & 0xff;
+                horizontal[y * WIDTH + x] = sum;
+            }
+        }
+        int taps = (2 * radius + 1) * (2 * radius + 1);
+        byte[] blurred = new byte[frame.length];
+        for (int y = 0; y < HEIGHT; y++) {
+            for (int x = 0; x < WIDTH; x++) {
+                int sum = 0;
+                for (int dy = -radius; dy <= radius; dy++)
+                    sum += horizontal[Math.max(0, Math.min(HEIGHT - 1, y + dy)) * WIDTH + x];
+                blurred[y * WIDTH + x] = (byte) (sum / taps);
+            }
+        }
+        return blurred;
+    }
+
+    // Turned around the center with bilinear sampling, the uncovered corners filled with background
+    private static byte[] rotate(byte[] frame, double angle) {
+        double cos = Math.cos(angle);
+        double sin = Math.sin(angle);
+        double centerX = WIDTH / 2.0;
+        double centerY = HEIGHT / 2.0;
+        byte[] rotated = new byte[frame.length];
+        for (int y = 0; y < HEIGHT; y++) {
+            for (int x = 0; x < WIDTH; x++) {
+                double sourceX = cos * (x - centerX) + sin * (y - centerY) + centerX;
+                double sourceY = -sin * (x - centerX) + cos * (y - centerY) + centerY;
+                int x0 = (int) Math.floor(sourceX);
+                int y0 = (int) Math.floor(sourceY);
+                if (x0 < 0 || y0 < 0 || x0 + 1 >= WIDTH || y0 + 1 >= HEIGHT) {
+                    rotated[y * WIDTH + x] = (byte) BACKGROUND;
+                    continue;
+                }
+                double fx = sourceX - x0;
+                double fy = sourceY - y0;
+                double top = (frame[y0 * WIDTH + x0] & 0xff) * (1 - fx) + (frame[y0 * WIDTH + x0 + 1] & 0xff) * fx;
+                double bottom = (frame[(y0 + 1) * WIDTH + x0] & 0xff) * (1 - fx) + (frame[(y0 + 1) * WIDTH + x0 + 1] & 0xff) * fx;
+                rotated[y * WIDTH + x] = clamp(top * (1 - fy) + bottom * fy);
+            }
+        }
+        return rotated;
+    }
+
+    private static byte clamp(double value) {
+        return (byte) Math.max(0, Math.min(255, (int) Math.round(value)));
+    }
+
+    private static String text(int length, Random random) {
+        String alphabet = "ABCDEFGHIJKLMNOPQRSTUVWXYZabcdefghijklmnopqrstuvwxyz0123456789-./:";
+        StringBuilder text = new StringBuilder(length);
+        for (int i = 0; i < length; i++)
+            text.append(alphabet.charAt(random.nextInt(alphabet.length())));
+        return text.toString();
+    }
+
+    // UPC/EAN check digit: weights 3 and 1 from the right
+    private static String withCheckDigit(String digits) {
+        int sum = 0;
+        for (int i = digits.length() - 1, weight = 3; i >= 0; i--, weight = 4 - weight)
+            sum += (digits.charAt(i) - '0') * weight;
+        return digits + (10 - sum % 10) % 10;
+    }
+
+    private static String digits(int length, Random random) {
+        StringBuilder digits = new StringBuilder(length);
+        for (int i = 0; i < length; i++)
+            digits.append((char) ('0' + random.nextInt(10)));
+        return digits.toString();
+    }
+}
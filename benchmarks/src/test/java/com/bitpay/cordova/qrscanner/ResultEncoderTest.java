@@ -0,0 +1,60 @@
+package com.bitpay.cordova.qrscanner;
+
+import com.google.zxing.BarcodeFormat;
+import com.google.zxing.Result;
+import com.google.zxing.ResultPoint;
+import org.json.JSONArray;
+import org.json.JSONObject;
+import org.junit.Test;
+
+import java.util.EnumSet;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.fail;
+
+public class ResultEncoderTest {
+
+    private final ResultEncoder encoder = new ResultEncoder();
+
+    @Test
+    public void escapesText() {
+        String text = "\"quoted\" back\\slash\nnew line\r\ttab \u0001 \u001f \u2028\u2029 \u00e9 \ud83d\ude00";
+        String json = encoder.encode(new Result(text, null, null, BarcodeFormat.QR_CODE), ResultEncoder.DEFAULT_FIELDS);
+        assertEquals("{\"text\":\"\\\"quoted\\\" back\\\\slash\\nnew line\\r\\ttab \\u0001 \\u001f \\u2028\\u2029 \u00e9 \ud83d\ude00\",\"type\":\"QR_CODE\"}", json);
+        // And round trips
+        assertEquals(text, new JSONObject(json).getString("text"));
+    }
+
+    @Test
+    public void encodesNullText() {
+        String json = encoder.encode(new Result(null, null, null, BarcodeFormat.QR_CODE), ResultEncoder.DEFAULT_FIELDS);
+        assertEquals("{\"text\":null,\"type\":\"QR_CODE\"}", json);
+    }
+
+    @Test
+    public void encodesRawBytesAsBase64() {
+        Result result = new Result("", new byte[]{(byte) 0xfb, (byte) 0xff, 0x00, 'a'}, null, BarcodeFormat.QR_CODE);
+        String json = encoder.encode(result, EnumSet.of(ResultEncoder.Field.RAW_BYTES));
+        assertEquals("{\"rawBytes\":\"+/8AYQ==\"}", json);
+    }
+
+    @Test
+    public void encodesOnlyTheSelectedFields() {
+        Result result = new Result("text", null, new ResultPoint[]{new ResultPoint(1, 2), null}, BarcodeFormat.EAN_13);
+        JSONObject json = new JSONObject(encoder.encode(result, EnumSet.of(ResultEncoder.Field.TYPE, ResultEncoder.Field.RESULT_POINTS)));
+        assertEquals("EAN_13", json.getString("type"));
+        assertFalse(json.has("text"));
+        assertEquals(1, json.getJSONArray("resultPoints").length());
+        assertEquals(2.0, json.getJSONArray("resultPoints").getJSONObject(0).getDouble("y"), 0);
+    }
+
+    @Test
+    public void rejectsUnknownFields() {
+        try {
+            ResultEncoder.parseFields(new JSONArray().put("text").put("color"));
+            fail("Unknown field accepted");
+        } catch (IllegalArgumentException expected) {
+        }
+    }
+}
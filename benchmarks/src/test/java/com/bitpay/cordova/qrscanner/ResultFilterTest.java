@@ -0,0 +1,201 @@
+package com.bitpay.cordova.qrscanner;
+
+import com.google.zxing.BarcodeFormat;
+import com.google.zxing.PlanarYUVLuminanceSource;
+import com.google.zxing.Result;
+import com.google.zxing.ResultMetadataType;
+import com.google.zxing.common.BitMatrix;
+import com.google.zxing.oned.Code128Writer;
+import org.json.JSONArray;
+import org.json.JSONObject;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class ResultFilterTest {
+
+    private static final char GS = 29;
+    // GTIN-13 4006381333931, as GTIN-14
+    private static final String GTIN = "04006381333931";
+
+    @Test
+    public void checksMod10() {
+        ResultFilter filter = filter("{\"check\": \"mod10\"}");
+        assertTrue(filter.accepts(code("4006381333931", BarcodeFormat.EAN_13)));
+        assertTrue(filter.accepts(code("96385074", BarcodeFormat.EAN_8)));
+        assertFalse(filter.accepts(code("4006381333932", BarcodeFormat.EAN_13)));
+        assertFalse(filter.accepts(code("40063813339X1", BarcodeFormat.CODE_128)));
+        assertFalse(filter.accepts(code("0", BarcodeFormat.CODE_128)));
+    }
+
+    @Test
+    public void checksLuhn() {
+        ResultFilter filter = filter("{\"check\": \"LUHN\"}");
+        assertTrue(filter.accepts(code("4111111111111111", BarcodeFormat.CODE_128)));
+        assertTrue(filter.accepts(code("490154203237518", BarcodeFormat.CODE_128)));
+        assertFalse(filter.accepts(code("4111111111111112", BarcodeFormat.CODE_128)));
+        assertFalse(filter.accepts(code("4111-1111-1111-1111", BarcodeFormat.CODE_128)));
+    }
+
+    @Test
+    public void checksEncodedGs1() {
+        ResultFilter filter = filter("{\"check\": \"gs1\"}");
+        // A variable length batch number in the middle, ended by a group separator
+        String label = "01" + GTIN + "10LOT12345" + GS + "17261231" + "21SN42";
+        assertTrue(filter.accepts(code("]C1" + label, BarcodeFormat.CODE_128)));
+        assertTrue(filter.accepts(code(GS + label, BarcodeFormat.DATA_MATRIX)));
+        assertTrue(filter.accepts(code(label + GS, BarcodeFormat.DATA_MATRIX)));
+        // Without the separator, the batch number takes the rest and is too long
+        assertFalse(filter.accepts(code("]C1" + label.replace(String.valueOf(GS), ""), BarcodeFormat.CODE_128)));
+        // Check digit, unknown identifier, letters in numeric data, fixed length data cut short
+        assertFalse(filter.accepts(code("01" + GTIN.substring(0, 13) + "2", BarcodeFormat.CODE_128)));
+        assertFalse(filter.accepts(code("04" + GTIN, BarcodeFormat.CODE_128)));
+        assertFalse(filter.accepts(code("1726123A", BarcodeFormat.CODE_128)));
+        assertFalse(filter.accepts(code("01" + GTIN.substring(0, 10), BarcodeFormat.CODE_128)));
+        assertFalse(filter.accepts(code("]C1", BarcodeFormat.CODE_128)));
+    }
+
+    @Test
+    public void checksPrintedGs1() {
+        ResultFilter filter = filter("{\"check\": \"gs1\"}");
+        assertTrue(filter.accepts(code("(01)" + GTIN + "(10)LOT12345(17)261231", BarcodeFormat.RSS_EXPANDED)));
+        assertTrue(filter.accepts(code("(3103)000750", BarcodeFormat.RSS_EXPANDED)));
+        assertFalse(filter.accepts(code("(01)" + GTIN + "(10)", BarcodeFormat.RSS_EXPANDED)));
+        assertFalse(filter.accepts(code("(1)" + GTIN, BarcodeFormat.RSS_EXPANDED)));
+        assertFalse(filter.accepts(code("(01)" + GTIN + "(17", BarcodeFormat.RSS_EXPANDED)));
+        assertFalse(filter.accepts(code("(10)LOT 1", BarcodeFormat.RSS_EXPANDED)));
+    }
+
+    @Test
+    public void readsCode128AsGs1128ForTheGs1Check() throws Exception {
+        String label = "01" + GTIN + "10LOT12345" + GS + "17261231";
+        BitMatrix matrix = new Code128Writer().encode("ñ" + label.replace(GS, 'ñ'), BarcodeFormat.CODE_128, 0, 0);
+
+        DecoderConfig gs1 = DecoderConfig.fromArgs(new JSONArray().put(new JSONObject("{\"formats\": [\"CODE_128\"], \"accept\": {\"check\": \"gs1\"}}")));
+        Result result = gs1.createImageDecoder().decode(render(matrix));
+        assertNotNull(result);
+        assertEquals("]C1" + label, result.getText());
+        assertTrue(filter("{\"check\": \"gs1\"}").accepts(result));
+
+        DecoderConfig plain = DecoderConfig.fromArgs(new JSONArray().put(new JSONObject("{\"formats\": [\"CODE_128\"]}")));
+        assertEquals(label.replace(String.valueOf(GS), ""), plain.createImageDecoder().decode(render(matrix)).getText());
+    }
+
+    @Test
+    public void filtersFormatsPrefixesPatternsAndLengths() {
+        ResultFilter formats = filter("{\"formats\": [\"qr-code\", \"EAN_13\"]}");
+        assertTrue(formats.accepts(code("x", BarcodeFormat.QR_CODE)));
+        assertFalse(formats.accepts(code("x", BarcodeFormat.CODE_39)));
+
+        ResultFilter prefix = filter("{\"prefix\": \"bitcoin:\"}");
+        assertTrue(prefix.accepts(code("bitcoin:1abc", BarcodeFormat.QR_CODE)));
+        assertFalse(prefix.accepts(code("https://bitpay.com", BarcodeFormat.QR_CODE)));
+        ResultFilter prefixes = filter("{\"prefix\": [\"bitcoin:\", \"https://\"]}");
+        assertTrue(prefixes.accepts(code("https://bitpay.com", BarcodeFormat.QR_CODE)));
+        assertFalse(prefixes.accepts(code("http://bitpay.com", BarcodeFormat.QR_CODE)));
+
+        // Found anywhere, unless anchored
+        ResultFilter pattern = filter("{\"pattern\": \"[0-9]{4}\"}");
+        assertTrue(pattern.accepts(code("ABC-1234-X", BarcodeFormat.CODE_39)));
+        assertFalse(pattern.accepts(code("ABC-123-X", BarcodeFormat.CODE_39)));
+        assertFalse(filter("{\"pattern\": \"^[0-9]{4}$\"}").accepts(code("ABC-1234-X", BarcodeFormat.CODE_39)));
+
+        ResultFilter length = filter("{\"minLength\": 2, \"maxLength\": 3}");
+        assertFalse(length.accepts(code("1", BarcodeFormat.CODE_39)));
+        assertTrue(length.accepts(code("12", BarcodeFormat.CODE_39)));
+        assertTrue(length.accepts(code("123", BarcodeFormat.CODE_39)));
+        assertFalse(length.accepts(code("1234", BarcodeFormat.CODE_39)));
+        assertFalse(length.accepts(code(null, BarcodeFormat.CODE_39)));
+    }
+
+    @Test
+    public void filtersTheCodesOfAFrame() {
+        ResultFilter filter = filter("{\"prefix\": \"keep\"}");
+        Result first = code("drop 1", BarcodeFormat.QR_CODE);
+        Result second = code("keep 2", BarcodeFormat.QR_CODE);
+        Result third = code("keep 3", BarcodeFormat.DATA_MATRIX);
+
+        Result kept = filter.filter(frame(first, second, third));
+        assertNotNull(kept);
+        assertEquals("keep 2", kept.getText());
+        Result[] codes = ((ResultEncoder.DecodeInfo) kept.getResultMetadata().get(ResultMetadataType.OTHER)).codes;
+        assertEquals(2, codes.length);
+        assertSame(second, codes[0]);
+        assertSame(third, codes[1]);
+
+        Result all = frame(second, third);
+        assertSame(all, filter.filter(all));
+        assertNull(filter.filter(frame(first)));
+        assertNull(filter.filter(first));
+        assertSame(second, filter.filter(second));
+    }
+
+    @Test
+    public void acceptsEverythingWithoutRules() {
+        assertNull(ResultFilter.fromJSON(null));
+        assertNull(ResultFilter.fromJSON(JSONObject.NULL));
+        assertNull(ResultFilter.fromJSON(new JSONObject()));
+    }
+
+    @Test
+    public void rejectsInvalidOptions() {
+        assertInvalid("accept must be an object", "[\"gs1\"]");
+        assertInvalid("accept.formats must be an array", "{\"formats\": \"QR_CODE\"}");
+        assertInvalid("Unknown barcode format: QR", "{\"formats\": [\"QR\"]}");
+        assertInvalid("accept.prefix must be a string or an array of strings", "{\"prefix\": 7}");
+        assertInvalid("accept.prefix must be a string or an array of strings", "{\"prefix\": [\"a\", 7]}");
+        assertInvalid("accept.pattern must be a string", "{\"pattern\": true}");
+        assertInvalid("Invalid accept.pattern: Unclosed character class", "{\"pattern\": \"[0-9\"}");
+        assertInvalid("accept.minLength must be a positive number, or 0", "{\"minLength\": -1}");
+        assertInvalid("accept.maxLength must be a positive number, or 0", "{\"maxLength\": \"long\"}");
+        assertInvalid("accept.minLength must not exceed accept.maxLength", "{\"minLength\": 4, \"maxLength\": 3}");
+        assertInvalid("Unknown accept.check: crc", "{\"check\": \"crc\"}");
+    }
+
+    private static void assertInvalid(String message, String accept) {
+        try {
+            ResultFilter.fromJSON(accept.startsWith("[") ? new JSONArray(accept) : new JSONObject(accept));
+            fail("Accepted " + accept);
+        } catch (IllegalArgumentException e) {
+            assertEquals(message, e.getMessage());
+        }
+    }
+
+    private static ResultFilter filter(String accept) {
+        return ResultFilter.fromJSON(new JSONObject(accept));
+    }
+
+    private static Result code(String text, BarcodeFormat format) {
+        return new Result(text, null, null, format);
+    }
+
+    // A frame of the 'multiple' decode mode, see MultiDecoderFactory
+    private static Result frame(Result... codes) {
+        Result result = new Result(codes[0].getText(), null, null, codes[0].getBarcodeFormat());
+        result.putMetadata(ResultMetadataType.OTHER, new ResultEncoder.DecodeInfo(null, 0, codes));
+        return result;
+    }
+
+    // The code, 2 pixels per module, with a quiet zone
+    private static PlanarYUVLuminanceSource render(BitMatrix matrix) {
+        int moduleSize = 2;
+        int quietZone = 20;
+        int width = matrix.getWidth() * moduleSize + 2 * quietZone;
+        int height = 60;
+        byte[] luminance = new byte[width * height];
+        for (int y = 0; y < height; y++) {
+            for (int x = 0; x < width; x++) {
+                int module = (x - quietZone) / moduleSize;
+                boolean dark = x >= quietZone && module < matrix.getWidth() && matrix.get(module, 0);
+                luminance[y * width + x] = (byte) (dark ? 0 : 255);
+            }
+        }
+        return new PlanarYUVLuminanceSource(luminance, width, height, 0, 0, width, height, false);
+    }
+}
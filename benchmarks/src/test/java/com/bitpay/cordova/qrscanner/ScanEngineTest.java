@@ -0,0 +1,151 @@
+package com.bitpay.cordova.qrscanner;
+
+import com.google.zxing.BarcodeFormat;
+import com.google.zxing.PlanarYUVLuminanceSource;
+import com.google.zxing.Result;
+import com.google.zxing.common.BitMatrix;
+import com.google.zxing.qrcode.QRCodeWriter;
+import org.json.JSONArray;
+import org.json.JSONObject;
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class ScanEngineTest {
+
+    private static final Result CODE = new Result("https://bitpay.com", null, null, BarcodeFormat.QR_CODE);
+
+    private ScanEngine engine;
+
+    @Before
+    public void setUp() {
+        engine = new ScanEngine();
+        engine.configure(new JSONArray(), true);
+    }
+
+    @Test
+    public void ignoresResultsWithoutScan() {
+        assertEquals(ScanEngine.Outcome.IGNORE, engine.onResult(CODE));
+    }
+
+    @Test
+    public void singleScanFinishesWithTheFirstCode() {
+        engine.setContinuous(false);
+        engine.startScan();
+        assertEquals(ScanEngine.Outcome.FINISH, engine.onResult(CODE));
+        assertFalse(engine.isScanning());
+        assertEquals(ScanEngine.Outcome.IGNORE, engine.onResult(CODE));
+    }
+
+    @Test
+    public void singleScanRescansForACodeReportedMeanwhile() throws Exception {
+        engine.configure(new JSONArray().put(new JSONObject().put("duplicateTtl", 60000)), true);
+        engine.setContinuous(true);
+        engine.startScan();
+        assertEquals(ScanEngine.Outcome.DELIVER, engine.onResult(CODE));
+        engine.stopScan();
+        // A frame decoded before the code was reported, delivered to the next scan
+        engine.setContinuous(false);
+        engine.startScan();
+        assertEquals(ScanEngine.Outcome.RESCAN, engine.onResult(CODE));
+        assertTrue(engine.isScanning());
+    }
+
+    @Test
+    public void continuousScanDeliversUntilStopped() {
+        engine.setContinuous(true);
+        engine.startScan();
+        assertEquals(ScanEngine.Outcome.DELIVER, engine.onResult(CODE));
+        assertEquals(ScanEngine.Outcome.DELIVER, engine.onResult(CODE));
+        assertTrue(engine.isScanning());
+        engine.stopScan();
+        assertEquals(ScanEngine.Outcome.IGNORE, engine.onResult(CODE));
+    }
+
+    @Test
+    public void remembersOnlyReportedCodes() throws Exception {
+        engine.configure(new JSONArray().put(new JSONObject().put("duplicateTtl", 60000)), true);
+        FrameDecoder decoder = engine.newFrameDecoder();
+        PlanarYUVLuminanceSource frame = frame(CODE.getText());
+
+        // Decoded while no scan takes it
+        Result result = decoder.decode(frame);
+        assertNotNull(result);
+        assertEquals(ScanEngine.Outcome.IGNORE, engine.onResult(result));
+
+        engine.setContinuous(true);
+        engine.startScan();
+        result = decoder.decode(frame);
+        assertNotNull(result);
+        assertEquals(ScanEngine.Outcome.DELIVER, engine.onResult(result));
+        // Decoded again before the first was reported
+        assertEquals(ScanEngine.Outcome.IGNORE, engine.onResult(result));
+        assertNull(decoder.decode(frame));
+
+        engine.clearDuplicates();
+        assertNotNull(decoder.decode(frame));
+    }
+
+    @Test
+    public void invalidOptionsApplyNothing() throws Exception {
+        JSONObject region = new JSONObject("{\"left\":0.1,\"top\":0.1,\"width\":0.5,\"height\":0.5}");
+        JSONObject options = new JSONObject().put("region", region).put("duplicateTtl", -1);
+        JSONObject before = engine.getRegion();
+        try {
+            engine.configure(new JSONArray().put(options), false);
+            fail("Invalid duplicateTtl accepted");
+        } catch (IllegalArgumentException expected) {
+        }
+        assertEquals(before.toString(), engine.getRegion().toString());
+    }
+
+    @Test
+    public void rejectsEscalateAfterOfTheWrongType() throws Exception {
+        for (Object escalateAfter : new Object[]{"abc", true, 0}) {
+            try {
+                engine.validate(new JSONArray().put(new JSONObject().put("decodeMode", "adaptive").put("escalateAfter", escalateAfter)));
+                fail("escalateAfter " + escalateAfter + " accepted");
+            } catch (IllegalArgumentException expected) {
+            }
+        }
+        engine.validate(new JSONArray().put(new JSONObject().put("decodeMode", "adaptive").put("escalateAfter", 3)));
+    }
+
+    @Test
+    public void prepareWithoutOptionsRestoresTheDefaults() {
+        engine.configure(new JSONArray().put("only-2d"), true);
+        DecoderConfig only2d = engine.getConfig();
+        assertNotSame(DecoderConfig.DEFAULT, only2d);
+        // A scan without options keeps the configuration of prepare
+        engine.configure(new JSONArray(), false);
+        assertSame(only2d, engine.getConfig());
+        engine.configure(new JSONArray(), true);
+        assertSame(DecoderConfig.DEFAULT, engine.getConfig());
+    }
+
+    // A VGA frame with the QR code in the middle
+    private static PlanarYUVLuminanceSource frame(String text) throws Exception {
+        int width = 640;
+        int height = 480;
+        BitMatrix code = new QRCodeWriter().encode(text, BarcodeFormat.QR_CODE, 200, 200);
+        byte[] luminance = new byte[width * height];
+        int left = (width - code.getWidth()) / 2;
+        int top = (height - code.getHeight()) / 2;
+        for (int y = 0; y < height; y++) {
+            for (int x = 0; x < width; x++) {
+                boolean dark = x >= left && x < left + code.getWidth() && y >= top && y < top + code.getHeight()
+                        && code.get(x - left, y - top);
+                luminance[y * width + x] = (byte) (dark ? 0 : 255);
+            }
+        }
+        return new PlanarYUVLuminanceSource(luminance, width, height, 0, 0, width, height, false);
+    }
+}
@@ -0,0 +1,93 @@
+package com.bitpay.cordova.qrscanner.benchmarks;
+
+import com.bitpay.cordova.qrscanner.FrameDecoder;
+import com.bitpay.cordova.qrscanner.ScanEngine;
+import com.google.zxing.PlanarYUVLuminanceSource;
+import com.google.zxing.Result;
+import org.json.JSONArray;
+import org.junit.Test;
+
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Hit rate and decode rate of the scanning core on the synthetic corpus, the regression
+ * counterpart of {@link DecodeBenchmark}. The expected hit counts are those of the current
+ * decoder: a change which finds fewer codes fails here, one which finds more should raise them.
+ * The time bound only catches gross slowdowns, use the benchmark to measure.
+ */
+public class DecodeRateTest {
+
+    // Per frame, after warm up; the slowest case (all formats, noisy 2D frames) takes about 40 ms
+    private static final double MAX_MILLIS_PER_FRAME = 250;
+    private static final int WARM_UP_ROUNDS = 5;
+
+    @Test
+    public void allFormatsFindQrCodesAndDataMatrix() {
+        assertHits("all", SyntheticCorpus.Codes.TWO_D, SyntheticCorpus.Distortion.CLEAN, 11);
+        assertHits("all", SyntheticCorpus.Codes.TWO_D, SyntheticCorpus.Distortion.ROTATED, 11);
+        assertHits("all", SyntheticCorpus.Codes.TWO_D, SyntheticCorpus.Distortion.BLUR, 8);
+        assertHits("all", SyntheticCorpus.Codes.TWO_D, SyntheticCorpus.Distortion.NOISE, 2);
+    }
+
+    @Test
+    public void allFormatsFindLinearCodes() {
+        for (SyntheticCorpus.Distortion distortion : SyntheticCorpus.Distortion.values())
+            assertHits("all", SyntheticCorpus.Codes.ONE_D, distortion, 16);
+    }
+
+    @Test
+    public void only2dFindsQrCodesAndDataMatrix() {
+        assertHits("only-2d", SyntheticCorpus.Codes.TWO_D, SyntheticCorpus.Distortion.CLEAN, 11);
+        assertHits("only-2d", SyntheticCorpus.Codes.TWO_D, SyntheticCorpus.Distortion.ROTATED, 11);
+        assertHits("only-2d", SyntheticCorpus.Codes.TWO_D, SyntheticCorpus.Distortion.BLUR, 8);
+        assertHits("only-2d", SyntheticCorpus.Codes.TWO_D, SyntheticCorpus.Distortion.NOISE, 2);
+    }
+
+    @Test
+    public void only2dIgnoresLinearCodes() {
+        assertHits("only-2d", SyntheticCorpus.Codes.ONE_D, SyntheticCorpus.Distortion.CLEAN, 0);
+    }
+
+    private static void assertHits(String formats, SyntheticCorpus.Codes codes, SyntheticCorpus.Distortion distortion, int expected) {
+        String name = formats + " " + codes + " " + distortion;
+        List<SyntheticCorpus.Frame> frames = SyntheticCorpus.generate(codes, distortion);
+        FrameDecoder decoder = decoder(formats);
+        for (int i = 0; i < WARM_UP_ROUNDS; i++) {
+            for (SyntheticCorpus.Frame frame : frames)
+                decode(decoder, frame);
+        }
+
+        int found = 0;
+        long start = System.nanoTime();
+        for (SyntheticCorpus.Frame frame : frames) {
+            Result result = decode(decoder, frame);
+            if (result != null && frame.text.equals(result.getText()))
+                found++;
+        }
+        double millisPerFrame = (System.nanoTime() - start) / 1e6 / frames.size();
+
+        if (expected > 0)
+            assertTrue(name + ": fewer than " + expected + " codes found: " + found, found >= expected);
+        else
+            assertEquals(name + ": codes found", 0, found);
+        assertTrue(name + ": " + millisPerFrame + " ms per frame", millisPerFrame < MAX_MILLIS_PER_FRAME);
+    }
+
+    private static FrameDecoder decoder(String formats) {
+        JSONArray args = new JSONArray();
+        if ("only-2d".equals(formats))
+            args.put("only-2d");
+        ScanEngine engine = new ScanEngine();
+        engine.configure(args, true);
+        return engine.newFrameDecoder();
+    }
+
+    // Wrapped like a preview frame, as by DecodeBenchmark
+    private static Result decode(FrameDecoder decoder, SyntheticCorpus.Frame frame) {
+        return decoder.decode(new PlanarYUVLuminanceSource(frame.luminance,
+                SyntheticCorpus.WIDTH, SyntheticCorpus.HEIGHT, 0, 0, SyntheticCorpus.WIDTH, SyntheticCorpus.HEIGHT, false));
+    }
+}
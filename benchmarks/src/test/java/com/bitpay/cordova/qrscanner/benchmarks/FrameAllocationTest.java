@@ -0,0 +1,73 @@
+package com.bitpay.cordova.qrscanner.benchmarks;
+
+import com.bitpay.cordova.qrscanner.FrameDecoder;
+import com.bitpay.cordova.qrscanner.PlaneLuminanceSource;
+import com.bitpay.cordova.qrscanner.ScanEngine;
+import org.json.JSONArray;
+import org.junit.Assume;
+import org.junit.Test;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.nio.ByteBuffer;
+
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Memory allocated per frame by the steady state scan loop of the camera2 backend (recycled
+ * planes, read in place), the regression counterpart of {@link FrameAllocationBenchmark}. The
+ * frame sized buffers are reused, what remains is allocated by ZXing's readers: a few KB with
+ * only-2d, and about 270 KB of small objects from the 1D readers with all formats. Neither is
+ * zero, the bounds keep them from growing.
+ */
+public class FrameAllocationTest {
+
+    private static final int WARM_UP_FRAMES = 300;
+    private static final int FRAMES = 200;
+
+    @Test
+    public void only2dAllocatesAFewKilobytesPerFrame() {
+        assertBytesPerFrame(new JSONArray().put("only-2d"), FrameAllocationBenchmark.emptyFrame(), 8 * 1024);
+    }
+
+    @Test
+    public void only2dAllocatesAFewKilobytesPerFrameWithACode() {
+        byte[] code = SyntheticCorpus.generate(SyntheticCorpus.Codes.TWO_D, SyntheticCorpus.Distortion.CLEAN).get(0).luminance;
+        assertBytesPerFrame(new JSONArray().put("only-2d"), code, 16 * 1024);
+    }
+
+    @Test
+    public void allFormatsAllocateLessThanAFrame() {
+        assertBytesPerFrame(new JSONArray(), FrameAllocationBenchmark.emptyFrame(), 300 * 1024);
+    }
+
+    private static void assertBytesPerFrame(JSONArray args, byte[] luminance, long maxBytes) {
+        ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+        Assume.assumeTrue("Allocation counters not supported by this JVM", threads instanceof com.sun.management.ThreadMXBean
+                && ((com.sun.management.ThreadMXBean) threads).isThreadAllocatedMemorySupported());
+        com.sun.management.ThreadMXBean allocation = (com.sun.management.ThreadMXBean) threads;
+        allocation.setThreadAllocatedMemoryEnabled(true);
+
+        ScanEngine engine = new ScanEngine();
+        engine.configure(args, true);
+        FrameDecoder decoder = engine.newFrameDecoder();
+        // The camera's two recycled buffers
+        ByteBuffer[] planes = {FrameAllocationBenchmark.sensorPlane(luminance), FrameAllocationBenchmark.sensorPlane(luminance)};
+        PlaneLuminanceSource source = FrameAllocationBenchmark.planeSource(planes[0]);
+        for (int i = 0; i < WARM_UP_FRAMES; i++)
+            decodeFrame(decoder, source, planes[i % planes.length]);
+
+        long thread = Thread.currentThread().getId();
+        long before = allocation.getThreadAllocatedBytes(thread);
+        for (int i = 0; i < FRAMES; i++)
+            decodeFrame(decoder, source, planes[i % planes.length]);
+        long bytesPerFrame = (allocation.getThreadAllocatedBytes(thread) - before) / FRAMES;
+
+        assertTrue(args + ": " + bytesPerFrame + " bytes per frame, expected at most " + maxBytes, bytesPerFrame <= maxBytes);
+    }
+
+    private static void decodeFrame(FrameDecoder decoder, PlaneLuminanceSource source, ByteBuffer plane) {
+        assertTrue("Source not reused", FrameAllocationBenchmark.wrap(source, plane));
+        decoder.decode(source);
+    }
+}
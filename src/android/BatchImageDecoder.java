@@ -0,0 +1,115 @@
+package com.bitpay.cordova.qrscanner;
+
+import android.util.Log;
+
+import com.google.zxing.Result;
+
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Decodes batches of images on a worker pool with one thread per core.
+ *
+ * Batches are fed to the pool by the calling thread, which blocks while the pool's queue is
+ * full or the images being decoded would exceed the memory budget: a quarter of the heap,
+ * reserved per image from its sampled size (see {@link ImageDecoder.Image#estimateBytes}).
+ * The pool and the budget are shared by concurrent batches.
+ */
+final class BatchImageDecoder {
+
+    interface Listener {
+        void onResult(int index, Result result);
+
+        void onError(int index, int error);
+
+        void onComplete(int images);
+    }
+
+    // Budget permits are kilobytes, so that budgets above 2 GB still fit an int
+    private static final int PERMIT_BYTES = 1024;
+
+    private final ImageDecoder imageDecoder;
+    private final ThreadPoolExecutor workers;
+    private final Semaphore memoryBudget;
+    private final int budgetPermits;
+
+    BatchImageDecoder(ImageDecoder imageDecoder) {
+        this.imageDecoder = imageDecoder;
+        int cores = Runtime.getRuntime().availableProcessors();
+        this.workers = new ThreadPoolExecutor(cores, cores, 30, TimeUnit.SECONDS,
+                new ArrayBlockingQueue<Runnable>(cores * 2));
+        this.workers.allowCoreThreadTimeOut(true);
+        this.budgetPermits = (int) Math.min(Integer.MAX_VALUE, Runtime.getRuntime().maxMemory() / 4 / PERMIT_BYTES);
+        this.memoryBudget = new Semaphore(budgetPermits, true);
+    }
+
+    /**
+     * Decodes the images, reporting each one to the listener as it completes (in any order),
+     * then calls onComplete. Blocks until the last image has been handed to the pool.
+     *
+     * @param errorUnavailable error reported for images which can't be read
+     * @param errorNotFound    error reported for images without a code
+     */
+    void decode(List<String> images, final DecoderConfig config, final Listener listener,
+                final int errorUnavailable, final int errorNotFound) {
+        final AtomicInteger remaining = new AtomicInteger(images.size());
+        if (images.isEmpty()) {
+            listener.onComplete(0);
+            return;
+        }
+        for (int i = 0; i < images.size(); i++) {
+            final int index = i;
+            final ImageDecoder.Image image;
+            try {
+                image = imageDecoder.open(images.get(i));
+            } catch (ImageDecoder.ImageUnavailableException | RuntimeException e) {
+                Log.w("QRScanner", "Unable to scan image " + index + ": " + e.getMessage());
+                listener.onError(index, errorUnavailable);
+                if (remaining.decrementAndGet() == 0)
+                    listener.onComplete(images.size());
+                continue;
+            }
+            // An image larger than the whole budget waits for the pool to drain and runs alone
+            final int permits = (int) Math.max(1, Math.min(budgetPermits, image.estimateBytes() / PERMIT_BYTES));
+            memoryBudget.acquireUninterruptibly(permits);
+            final int total = images.size();
+            Runnable task = new Runnable() {
+                public void run() {
+                    try {
+                        Result result = ImageDecoder.decode(ImageDecoder.loadLuminance(image), config);
+                        if (result == null)
+                            listener.onError(index, errorNotFound);
+                        else
+                            listener.onResult(index, result);
+                    } catch (ImageDecoder.ImageUnavailableException e) {
+                        Log.w("QRScanner", "Unable to scan image " + index + ": " + e.getMessage());
+                        listener.onError(index, errorUnavailable);
+                    } catch (RuntimeException | OutOfMemoryError e) {
+                        // Reported for this image only, the rest of the batch (and onComplete) goes on
+                        Log.e("QRScanner", "Failed to scan image " + index, e);
+                        listener.onError(index, errorUnavailable);
+                    } finally {
+                        memoryBudget.release(permits);
+                        if (remaining.decrementAndGet() == 0)
+                            listener.onComplete(total);
+                    }
+                }
+            };
+            try {
+                workers.execute(task);
+            } catch (RejectedExecutionException e) {
+                // Queue full (or pool shut down): decode on this thread, which also holds back the feed
+                task.run();
+            }
+        }
+    }
+
+    void shutdown() {
+        workers.shutdownNow();
+    }
+}
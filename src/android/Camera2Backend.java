@@ -0,0 +1,500 @@
+package com.bitpay.cordova.qrscanner;
+
+import android.annotation.TargetApi;
+import android.content.Context;
+import android.graphics.ImageFormat;
+import android.graphics.Matrix;
+import android.graphics.RectF;
+import android.graphics.SurfaceTexture;
+import android.hardware.camera2.CameraAccessException;
+import android.hardware.camera2.CameraCaptureSession;
+import android.hardware.camera2.CameraCharacteristics;
+import android.hardware.camera2.CameraDevice;
+import android.hardware.camera2.CameraManager;
+import android.hardware.camera2.CameraMetadata;
+import android.hardware.camera2.CaptureRequest;
+import android.hardware.camera2.params.StreamConfigurationMap;
+import android.media.Image;
+import android.media.ImageReader;
+import android.os.Build;
+import android.os.Handler;
+import android.os.HandlerThread;
+import android.os.Looper;
+import android.util.Log;
+import android.view.Surface;
+import android.view.TextureView;
+import android.view.View;
+import android.view.WindowManager;
+
+import com.google.zxing.Result;
+import com.journeyapps.barcodescanner.BarcodeCallback;
+import com.journeyapps.barcodescanner.BarcodeResult;
+import com.journeyapps.barcodescanner.Decoder;
+import com.journeyapps.barcodescanner.Size;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * A preview on the camera2 API. The camera streams into the preview's TextureView and into an
+ * ImageReader of YUV_420_888 frames; the Y plane of each frame is decoded in place, as a
+ * {@link PlaneLuminanceSource}, without copying the frame first. The reader holds at most
+ * {@link #MAX_IMAGES} frames, the newest frame is taken whenever the decoder is free and the
+ * others are dropped. The reader recycles its buffers, and the source wrapping them and the
+ * decoder's buffers (see PooledBinarizer) are reused from frame to frame, so the scan loop
+ * copies no frames. What it still allocates is ZXing's own, mostly the 1D readers' (see
+ * FrameAllocationTest).
+ *
+ * If the camera can't be opened or configured, the failure callback is run: QRScanner falls back
+ * to the legacy preview then. If the camera is taken by another app (a client of higher priority),
+ * the backend is paused and the disconnect callback is run: QRScanner pauses the preview, and
+ * resuming it opens the camera again.
+ */
+@TargetApi(Build.VERSION_CODES.LOLLIPOP)
+class Camera2Backend implements CaptureBackend {
+
+    // The frame being decoded and the one being filled
+    private static final int MAX_IMAGES = 2;
+
+    private static final class DecodeRequest {
+        final BarcodeCallback callback;
+        final boolean continuous;
+        final Decoder decoder;
+
+        DecodeRequest(BarcodeCallback callback, boolean continuous, Decoder decoder) {
+            this.callback = callback;
+            this.continuous = continuous;
+            this.decoder = decoder;
+        }
+    }
+
+    private final Context context;
+    private final FrameGovernor frameGovernor;
+    private final ScanMetrics metrics;
+    private final Runnable onFailure;
+    private final Runnable onDisconnect;
+    private final CameraManager cameraManager;
+    private final TextureView view;
+    // Camera callbacks run on the UI thread, like every method of the backend
+    private final Handler mainHandler = new Handler(Looper.getMainLooper());
+
+    private int cameraId;
+    private long targetPixels;
+    private volatile Size previewSize;
+    private boolean torch;
+    private boolean frozen;
+    private boolean resumed;
+    private boolean opening;
+    // Counts the pauses, a camera opened for an earlier resume is closed right away
+    private int generation;
+    private boolean continuousFocus;
+    private CameraDevice device;
+    private CameraCaptureSession session;
+    private ImageReader reader;
+    private Surface previewSurface;
+    // Frames are decoded on a thread of their own, stopped with the camera
+    private HandlerThread decoderThread;
+    private Handler decoderHandler;
+    // Clockwise rotation turning frames upright, read by the decoder thread
+    private volatile int frameRotation;
+    private final AtomicReference<DecodeRequest> request = new AtomicReference<>();
+
+    Camera2Backend(Context context, FrameGovernor frameGovernor, ScanMetrics metrics, Runnable onFailure, Runnable onDisconnect) {
+        this.context = context;
+        this.frameGovernor = frameGovernor;
+        this.metrics = metrics;
+        this.onFailure = onFailure;
+        this.onDisconnect = onDisconnect;
+        cameraManager = (CameraManager) context.getSystemService(Context.CAMERA_SERVICE);
+        view = new TextureView(context);
+        view.setSurfaceTextureListener(new TextureView.SurfaceTextureListener() {
+            public void onSurfaceTextureAvailable(SurfaceTexture surface, int width, int height) {
+                if (resumed && device == null && !opening)
+                    openCamera();
+            }
+
+            public void onSurfaceTextureSizeChanged(SurfaceTexture surface, int width, int height) {
+                updateTransform();
+            }
+
+            public boolean onSurfaceTextureDestroyed(SurfaceTexture surface) {
+                return true;
+            }
+
+            public void onSurfaceTextureUpdated(SurfaceTexture surface) {
+            }
+        });
+    }
+
+    @Override
+    public View getView() {
+        return view;
+    }
+
+    @Override
+    public String getName() {
+        return CAMERA2;
+    }
+
+    @Override
+    public void setCameraId(int cameraId) {
+        this.cameraId = cameraId;
+    }
+
+    @Override
+    public int getCameraId() {
+        return cameraId;
+    }
+
+    @Override
+    public void setTargetPixels(long targetPixels) {
+        this.targetPixels = targetPixels;
+    }
+
+    @Override
+    public Size getPreviewSize() {
+        return previewSize;
+    }
+
+    @Override
+    public void resume() {
+        resumed = true;
+        if (decoderThread == null) {
+            decoderThread = new HandlerThread("QRScanner decoder");
+            decoderThread.start();
+            decoderHandler = new Handler(decoderThread.getLooper());
+        }
+        // Else opened once the view's surface is available
+        if (view.isAvailable() && device == null && !opening)
+            openCamera();
+    }
+
+    @Override
+    public void pause() {
+        resumed = false;
+        closeCamera();
+        if (decoderThread != null) {
+            decoderThread.quitSafely();
+            decoderThread = null;
+            decoderHandler = null;
+        }
+    }
+
+    @Override
+    public void switchCamera(int cameraId) {
+        // Only the device, its session and reader are replaced: the decoder thread and the running decode stay
+        closeCamera();
+        this.cameraId = cameraId;
+        if (resumed && view.isAvailable())
+            openCamera();
+    }
+
+    private void closeCamera() {
+        opening = false;
+        frozen = false;
+        generation++;
+        if (session != null) {
+            session.close();
+            session = null;
+        }
+        if (device != null) {
+            device.close();
+            device = null;
+        }
+        if (previewSurface != null) {
+            previewSurface.release();
+            previewSurface = null;
+        }
+        // Behind the frame being decoded, whose buffer belongs to the reader
+        final ImageReader frames = reader;
+        if (frames != null && decoderHandler != null) {
+            decoderHandler.post(new Runnable() {
+                public void run() {
+                    frames.close();
+                }
+            });
+        }
+        reader = null;
+    }
+
+    @Override
+    public void setTorch(boolean on) {
+        torch = on;
+        if (session != null && !frozen)
+            startRepeating();
+    }
+
+    @Override
+    public void setFrozen(boolean frozen) {
+        if (this.frozen == frozen)
+            return;
+        this.frozen = frozen;
+        if (session == null)
+            return;
+        if (!frozen) {
+            startRepeating();
+            return;
+        }
+        try {
+            // The texture keeps showing the last frame
+            session.stopRepeating();
+        } catch (CameraAccessException | IllegalStateException e) {
+            Log.w("QRScanner", "Unable to freeze the camera2 preview", e);
+        }
+    }
+
+    @Override
+    public void decode(boolean continuous, BarcodeCallback callback) {
+        request.set(new DecodeRequest(callback, continuous, frameGovernor.createDecoder(null)));
+    }
+
+    @Override
+    public void stopDecoding() {
+        request.set(null);
+    }
+
+    @Override
+    public void decoderChanged() {
+        DecodeRequest current = request.get();
+        if (current != null)
+            request.compareAndSet(current, new DecodeRequest(current.callback, current.continuous, frameGovernor.createDecoder(null)));
+    }
+
+    private void openCamera() {
+        String id = Integer.toString(cameraId);
+        try {
+            CameraCharacteristics characteristics = cameraManager.getCameraCharacteristics(id);
+            frameRotation = frameRotation(characteristics);
+            Size size = pickSize(characteristics.get(CameraCharacteristics.SCALER_STREAM_CONFIGURATION_MAP));
+            if (size == null)
+                throw new IllegalStateException("Camera " + id + " has no YUV preview sizes");
+            continuousFocus = hasMode(characteristics.get(CameraCharacteristics.CONTROL_AF_AVAILABLE_MODES),
+                    CameraMetadata.CONTROL_AF_MODE_CONTINUOUS_PICTURE);
+            previewSize = size;
+            reader = ImageReader.newInstance(size.width, size.height, ImageFormat.YUV_420_888, MAX_IMAGES);
+            reader.setOnImageAvailableListener(new FrameListener(), decoderHandler);
+            view.getSurfaceTexture().setDefaultBufferSize(size.width, size.height);
+            updateTransform();
+            opening = true;
+            final int opened = generation;
+            cameraManager.openCamera(id, new CameraDevice.StateCallback() {
+                public void onOpened(CameraDevice camera) {
+                    if (opened != generation) {
+                        camera.close();
+                        return;
+                    }
+                    opening = false;
+                    device = camera;
+                    createSession();
+                }
+
+                public void onDisconnected(CameraDevice camera) {
+                    camera.close();
+                    if (opened != generation)
+                        return;
+                    Log.w("QRScanner", "camera2 camera " + camera.getId() + " disconnected");
+                    device = null;
+                    pause();
+                    onDisconnect.run();
+                }
+
+                public void onError(CameraDevice camera, int error) {
+                    camera.close();
+                    if (opened != generation)
+                        return;
+                    opening = false;
+                    device = null;
+                    fail(new IllegalStateException("Camera " + camera.getId() + " failed with error " + error));
+                }
+            }, mainHandler);
+        } catch (CameraAccessException | IllegalArgumentException | IllegalStateException | SecurityException e) {
+            opening = false;
+            fail(e);
+        }
+    }
+
+    private void createSession() {
+        previewSurface = new Surface(view.getSurfaceTexture());
+        try {
+            device.createCaptureSession(Arrays.asList(previewSurface, reader.getSurface()), new CameraCaptureSession.StateCallback() {
+                public void onConfigured(CameraCaptureSession configured) {
+                    if (device == null || configured.getDevice() != device) {
+                        configured.close();
+                        return;
+                    }
+                    session = configured;
+                    metrics.cameraOpened();
+                    if (!frozen)
+                        startRepeating();
+                }
+
+                public void onConfigureFailed(CameraCaptureSession configured) {
+                    if (device != null && configured.getDevice() == device)
+                        fail(new IllegalStateException("Unable to configure the capture session"));
+                }
+            }, mainHandler);
+        } catch (CameraAccessException | IllegalStateException e) {
+            fail(e);
+        }
+    }
+
+    private void startRepeating() {
+        try {
+            CaptureRequest.Builder builder = device.createCaptureRequest(CameraDevice.TEMPLATE_PREVIEW);
+            builder.addTarget(previewSurface);
+            builder.addTarget(reader.getSurface());
+            builder.set(CaptureRequest.CONTROL_MODE, CameraMetadata.CONTROL_MODE_AUTO);
+            if (continuousFocus)
+                builder.set(CaptureRequest.CONTROL_AF_MODE, CameraMetadata.CONTROL_AF_MODE_CONTINUOUS_PICTURE);
+            builder.set(CaptureRequest.FLASH_MODE, torch ? CameraMetadata.FLASH_MODE_TORCH : CameraMetadata.FLASH_MODE_OFF);
+            session.setRepeatingRequest(builder.build(), null, mainHandler);
+        } catch (CameraAccessException | IllegalStateException e) {
+            // The session was closed in the meantime, or the camera lost
+            Log.w("QRScanner", "Unable to start the camera2 preview", e);
+        }
+    }
+
+    private void fail(Exception error) {
+        Log.e("QRScanner", "camera2 preview failed", error);
+        metrics.cameraFailed();
+        pause();
+        onFailure.run();
+    }
+
+    /**
+     * Decodes the frames of one reader, on the decoder thread.
+     */
+    private class FrameListener implements ImageReader.OnImageAvailableListener {
+        // Moved from frame to frame, see PlaneLuminanceSource.wrap
+        private PlaneLuminanceSource frame;
+
+        @Override
+        public void onImageAvailable(ImageReader frames) {
+            Image image;
+            try {
+                image = frames.acquireLatestImage();
+            } catch (IllegalStateException e) {
+                // Too many frames held, or the reader is closing
+                return;
+            }
+            if (image == null)
+                return;
+            try {
+                DecodeRequest current = request.get();
+                if (current == null)
+                    return;
+                Image.Plane luminance = image.getPlanes()[0];
+                int rotation = frameRotation;
+                if (frame == null || !frame.wrap(luminance.getBuffer(), luminance.getRowStride(), luminance.getPixelStride(),
+                        image.getWidth(), image.getHeight(), rotation)) {
+                    frame = new PlaneLuminanceSource(luminance.getBuffer(), luminance.getRowStride(),
+                            luminance.getPixelStride(), image.getWidth(), image.getHeight(), rotation);
+                }
+                Result result = current.decoder.decode(frame);
+                // A single decode ends with its first result, like a BarcodeView's
+                if (result != null && (current.continuous ? request.get() == current : request.compareAndSet(current, null)))
+                    current.callback.barcodeResult(new BarcodeResult(result, null));
+            } finally {
+                image.close();
+            }
+        }
+    }
+
+    private int displayRotation() {
+        WindowManager windowManager = (WindowManager) context.getSystemService(Context.WINDOW_SERVICE);
+        switch (windowManager.getDefaultDisplay().getRotation()) {
+            case Surface.ROTATION_90:
+                return 90;
+            case Surface.ROTATION_180:
+                return 180;
+            case Surface.ROTATION_270:
+                return 270;
+            default:
+                return 0;
+        }
+    }
+
+    private int frameRotation(CameraCharacteristics characteristics) {
+        Integer sensorOrientation = characteristics.get(CameraCharacteristics.SENSOR_ORIENTATION);
+        Integer facing = characteristics.get(CameraCharacteristics.LENS_FACING);
+        int orientation = sensorOrientation != null ? sensorOrientation : 90;
+        if (facing != null && facing == CameraMetadata.LENS_FACING_FRONT)
+            return (orientation + displayRotation()) % 360;
+        return (orientation - displayRotation() + 360) % 360;
+    }
+
+    // The YUV size the preview can show too, picked by the preview resolution like PreviewSizePolicy does
+    private Size pickSize(StreamConfigurationMap configurations) {
+        if (configurations == null)
+            return null;
+        android.util.Size[] yuvSizes = configurations.getOutputSizes(ImageFormat.YUV_420_888);
+        android.util.Size[] previewSizes = configurations.getOutputSizes(SurfaceTexture.class);
+        if (yuvSizes == null || previewSizes == null)
+            return null;
+        List<android.util.Size> shown = Arrays.asList(previewSizes);
+        List<Size> sizes = new ArrayList<>();
+        for (android.util.Size size : yuvSizes) {
+            if (shown.contains(size))
+                sizes.add(new Size(size.getWidth(), size.getHeight()));
+        }
+        if (sizes.isEmpty())
+            return null;
+        Size desired = null;
+        if (view.getWidth() > 0 && view.getHeight() > 0) {
+            desired = new Size(view.getWidth(), view.getHeight());
+            if (frameRotation % 180 != 0)
+                desired = desired.rotate();
+        }
+        long target = targetPixels;
+        if (target == 0)
+            target = desired != null ? (long) desired.width * desired.height : PreviewSizePolicy.BALANCED_PIXELS;
+        return PreviewSizePolicy.pick(sizes, desired, target);
+    }
+
+    /**
+     * Scales the preview to fill the view without distortion (cropping the overflow), and turns
+     * it with the display: the texture is laid out for the display's natural orientation.
+     */
+    private void updateTransform() {
+        Size size = previewSize;
+        int viewWidth = view.getWidth();
+        int viewHeight = view.getHeight();
+        if (size == null || viewWidth == 0 || viewHeight == 0)
+            return;
+        float centerX = viewWidth / 2f;
+        float centerY = viewHeight / 2f;
+        int displayRotation = displayRotation();
+        Matrix matrix = new Matrix();
+        if (displayRotation == 90 || displayRotation == 270) {
+            RectF viewRect = new RectF(0, 0, viewWidth, viewHeight);
+            RectF bufferRect = new RectF(0, 0, size.height, size.width);
+            bufferRect.offset(centerX - bufferRect.centerX(), centerY - bufferRect.centerY());
+            matrix.setRectToRect(viewRect, bufferRect, Matrix.ScaleToFit.FILL);
+            float scale = Math.max((float) viewHeight / size.height, (float) viewWidth / size.width);
+            matrix.postScale(scale, scale, centerX, centerY);
+            matrix.postRotate(displayRotation - 180, centerX, centerY);
+        } else {
+            // The frame as shown, stretched to the view by default
+            boolean turned = frameRotation % 180 != 0;
+            float shownWidth = turned ? size.height : size.width;
+            float shownHeight = turned ? size.width : size.height;
+            float scale = Math.max(viewWidth / shownWidth, viewHeight / shownHeight);
+            matrix.setScale(shownWidth * scale / viewWidth, shownHeight * scale / viewHeight, centerX, centerY);
+            if (displayRotation == 180)
+                matrix.postRotate(180, centerX, centerY);
+        }
+        view.setTransform(matrix);
+    }
+
+    private static boolean hasMode(int[] modes, int mode) {
+        if (modes == null)
+            return false;
+        for (int available : modes) {
+            if (available == mode)
+                return true;
+        }
+        return false;
+    }
+}
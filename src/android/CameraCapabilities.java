@@ -0,0 +1,289 @@
+package com.bitpay.cordova.qrscanner;
+
+import android.content.Context;
+import android.content.pm.PackageManager;
+import android.graphics.SurfaceTexture;
+import android.hardware.Camera;
+import android.hardware.camera2.CameraCharacteristics;
+import android.hardware.camera2.CameraManager;
+import android.hardware.camera2.CameraMetadata;
+import android.hardware.camera2.params.StreamConfigurationMap;
+import android.os.Build;
+import android.util.Log;
+import android.util.Size;
+import android.util.SizeF;
+
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Capabilities of the device's cameras, enumerated once per process.
+ *
+ * Camera ids are those of the legacy android.hardware.Camera API used by the
+ * preview, which on all common devices match the first camera2 ids ("0", "1", ...).
+ */
+@SuppressWarnings("deprecation")
+final class CameraCapabilities {
+
+    static final class CameraInfo {
+        final int id;
+        final String facing;
+        final int orientation;
+        final float[] focalLengths;
+        final SizeF sensorSize;
+        final boolean flash;
+        final List<Size> previewSizes;
+        final List<String> focusModes;
+        // camera2 hardware level: "legacy", "limited", "full", "level3", "external" or null if unknown
+        final String hardwareLevel;
+        // Reported as back-facing by both the legacy and the camera2 API
+        final boolean confirmedBack;
+
+        CameraInfo(int id, String facing, int orientation, float[] focalLengths, SizeF sensorSize, boolean flash,
+                   List<Size> previewSizes, List<String> focusModes, String hardwareLevel, boolean confirmedBack) {
+            this.id = id;
+            this.facing = facing;
+            this.orientation = orientation;
+            this.focalLengths = focalLengths;
+            this.sensorSize = sensorSize;
+            this.flash = flash;
+            this.previewSizes = previewSizes;
+            this.focusModes = focusModes;
+            this.hardwareLevel = hardwareLevel;
+            this.confirmedBack = confirmedBack;
+        }
+
+        /**
+         * Whether the camera2 API drives this camera natively, rather than through a shim on top of
+         * the legacy API (which would gain nothing over the legacy preview).
+         */
+        boolean hasFullCamera2Support() {
+            return "full".equals(hardwareLevel) || "level3".equals(hardwareLevel);
+        }
+
+        float getShortestFocalLength() {
+            float shortest = Float.MAX_VALUE;
+            for (float focalLength : focalLengths)
+                shortest = Math.min(shortest, focalLength);
+            return shortest;
+        }
+
+        JSONObject toJSON() throws JSONException {
+            JSONObject camera = new JSONObject();
+            camera.put("id", id);
+            camera.put("facing", facing);
+            camera.put("orientation", orientation);
+            JSONArray focalLengthsArray = new JSONArray();
+            for (float focalLength : focalLengths)
+                focalLengthsArray.put((double) focalLength);
+            camera.put("focalLengths", focalLengthsArray);
+            if (sensorSize != null) {
+                JSONObject sensor = new JSONObject();
+                sensor.put("width", (double) sensorSize.getWidth());
+                sensor.put("height", (double) sensorSize.getHeight());
+                camera.put("sensorSize", sensor);
+            }
+            camera.put("flash", flash);
+            JSONArray sizes = new JSONArray();
+            for (Size size : previewSizes) {
+                JSONObject previewSize = new JSONObject();
+                previewSize.put("width", size.getWidth());
+                previewSize.put("height", size.getHeight());
+                sizes.put(previewSize);
+            }
+            camera.put("previewSizes", sizes);
+            camera.put("focusModes", new JSONArray(focusModes));
+            if (hardwareLevel != null)
+                camera.put("hardwareLevel", hardwareLevel);
+            return camera;
+        }
+    }
+
+    private static volatile CameraCapabilities instance;
+
+    final boolean hasCamera;
+    final boolean hasFrontCamera;
+    final boolean hasFlash;
+    final List<CameraInfo> cameras;
+    private final boolean hasFrontFacingCamera;
+    private final int ultraWideCameraId;
+
+    static CameraCapabilities get(Context context) {
+        CameraCapabilities capabilities = instance;
+        if (capabilities == null) {
+            synchronized (CameraCapabilities.class) {
+                capabilities = instance;
+                if (capabilities == null) {
+                    capabilities = new CameraCapabilities(context.getApplicationContext());
+                    instance = capabilities;
+                }
+            }
+        }
+        return capabilities;
+    }
+
+    private CameraCapabilities(Context context) {
+        PackageManager packageManager = context.getPackageManager();
+        hasCamera = packageManager.hasSystemFeature(PackageManager.FEATURE_CAMERA);
+        hasFrontCamera = packageManager.hasSystemFeature(PackageManager.FEATURE_CAMERA_FRONT);
+        hasFlash = packageManager.hasSystemFeature(PackageManager.FEATURE_CAMERA_FLASH);
+        cameras = Collections.unmodifiableList(enumerate(context));
+
+        boolean frontFacing = false;
+        int ultraWide = Camera.CameraInfo.CAMERA_FACING_BACK;
+        float shortestFocalLength = Float.MAX_VALUE;
+        for (CameraInfo camera : cameras) {
+            if ("front".equals(camera.facing))
+                frontFacing = true;
+            // Only cameras which both APIs agree are back-facing, and which sit in the orientation of the
+            // main back camera, are considered: some devices report incorrect camera2 characteristics.
+            // https://stackoverflow.com/questions/57115158/camera-2-cameracharacteristics-seem-to-show-incorrect-data
+            if (camera.confirmedBack && camera.orientation == 90 && camera.focalLengths.length > 0
+                    && camera.getShortestFocalLength() < shortestFocalLength) {
+                shortestFocalLength = camera.getShortestFocalLength();
+                ultraWide = camera.id;
+            }
+        }
+        hasFrontFacingCamera = frontFacing;
+        ultraWideCameraId = ultraWide;
+    }
+
+    private static List<CameraInfo> enumerate(Context context) {
+        List<CameraInfo> cameras = new ArrayList<>();
+        CameraManager cameraManager = null;
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.LOLLIPOP)
+            cameraManager = (CameraManager) context.getSystemService(Context.CAMERA_SERVICE);
+
+        int numCameras = Camera.getNumberOfCameras();
+        for (int id = 0; id < numCameras; id++) {
+            Camera.CameraInfo legacyInfo = new Camera.CameraInfo();
+            try {
+                Camera.getCameraInfo(id, legacyInfo);
+            } catch (RuntimeException e) {
+                Log.w("QRScanner", "Unable to query camera " + id, e);
+                continue;
+            }
+            String facing = legacyInfo.facing == Camera.CameraInfo.CAMERA_FACING_FRONT ? "front" : "back";
+            CameraCharacteristics characteristics = null;
+            if (cameraManager != null) {
+                try {
+                    characteristics = cameraManager.getCameraCharacteristics(Integer.toString(id));
+                } catch (Exception e) {
+                    Log.w("QRScanner", "No camera2 characteristics for camera " + id, e);
+                }
+            }
+            if (characteristics == null) {
+                cameras.add(new CameraInfo(id, facing, legacyInfo.orientation, new float[0], null, false,
+                        Collections.<Size>emptyList(), Collections.<String>emptyList(), null, false));
+                continue;
+            }
+            cameras.add(fromCharacteristics(id, facing, legacyInfo.orientation, characteristics));
+        }
+        return cameras;
+    }
+
+    private static CameraInfo fromCharacteristics(int id, String facing, int orientation, CameraCharacteristics characteristics) {
+        Integer lensFacing = characteristics.get(CameraCharacteristics.LENS_FACING);
+        float[] focalLengths = characteristics.get(CameraCharacteristics.LENS_INFO_AVAILABLE_FOCAL_LENGTHS);
+        Boolean flash = characteristics.get(CameraCharacteristics.FLASH_INFO_AVAILABLE);
+        StreamConfigurationMap streamConfigurations = characteristics.get(CameraCharacteristics.SCALER_STREAM_CONFIGURATION_MAP);
+        int[] afModes = characteristics.get(CameraCharacteristics.CONTROL_AF_AVAILABLE_MODES);
+        Integer hardwareLevel = characteristics.get(CameraCharacteristics.INFO_SUPPORTED_HARDWARE_LEVEL);
+
+        List<Size> previewSizes = new ArrayList<>();
+        if (streamConfigurations != null) {
+            Size[] outputSizes = streamConfigurations.getOutputSizes(SurfaceTexture.class);
+            if (outputSizes != null)
+                Collections.addAll(previewSizes, outputSizes);
+        }
+        List<String> focusModes = new ArrayList<>();
+        if (afModes != null) {
+            for (int afMode : afModes)
+                focusModes.add(focusModeName(afMode));
+        }
+        boolean confirmedBack = "back".equals(facing) && lensFacing != null && lensFacing == CameraMetadata.LENS_FACING_BACK;
+
+        return new CameraInfo(id, facing, orientation,
+                focalLengths != null ? focalLengths : new float[0],
+                characteristics.get(CameraCharacteristics.SENSOR_INFO_PHYSICAL_SIZE),
+                flash != null && flash,
+                Collections.unmodifiableList(previewSizes),
+                Collections.unmodifiableList(focusModes),
+                hardwareLevel != null ? hardwareLevelName(hardwareLevel) : null,
+                confirmedBack);
+    }
+
+    // Named like the legacy Camera.Parameters focus modes
+    private static String focusModeName(int afMode) {
+        switch (afMode) {
+            case CameraMetadata.CONTROL_AF_MODE_OFF:
+                return "fixed";
+            case CameraMetadata.CONTROL_AF_MODE_AUTO:
+                return "auto";
+            case CameraMetadata.CONTROL_AF_MODE_MACRO:
+                return "macro";
+            case CameraMetadata.CONTROL_AF_MODE_CONTINUOUS_VIDEO:
+                return "continuous-video";
+            case CameraMetadata.CONTROL_AF_MODE_CONTINUOUS_PICTURE:
+                return "continuous-picture";
+            case CameraMetadata.CONTROL_AF_MODE_EDOF:
+                return "edof";
+            default:
+                return "unknown";
+        }
+    }
+
+    private static String hardwareLevelName(int hardwareLevel) {
+        switch (hardwareLevel) {
+            case CameraMetadata.INFO_SUPPORTED_HARDWARE_LEVEL_LEGACY:
+                return "legacy";
+            case CameraMetadata.INFO_SUPPORTED_HARDWARE_LEVEL_LIMITED:
+                return "limited";
+            case CameraMetadata.INFO_SUPPORTED_HARDWARE_LEVEL_FULL:
+                return "full";
+            case CameraMetadata.INFO_SUPPORTED_HARDWARE_LEVEL_3:
+                return "level3";
+            case CameraMetadata.INFO_SUPPORTED_HARDWARE_LEVEL_EXTERNAL:
+                return "external";
+            default:
+                return "unknown";
+        }
+    }
+
+    boolean hasFrontFacingCamera() {
+        return hasFrontFacingCamera;
+    }
+
+    CameraInfo getCamera(int id) {
+        for (CameraInfo camera : cameras) {
+            if (camera.id == id)
+                return camera;
+        }
+        return null;
+    }
+
+    /**
+     * The back camera with the shortest focal length (widest field of view), or the default back camera.
+     */
+    int getUltraWideCameraId() {
+        return ultraWideCameraId;
+    }
+
+    JSONObject toJSON() throws JSONException {
+        JSONObject capabilities = new JSONObject();
+        capabilities.put("hasCamera", hasCamera);
+        capabilities.put("hasFrontCamera", hasFrontCamera);
+        capabilities.put("hasFlash", hasFlash);
+        capabilities.put("ultraWideCamera", ultraWideCameraId);
+        JSONArray cameraArray = new JSONArray();
+        for (CameraInfo camera : cameras)
+            cameraArray.put(camera.toJSON());
+        capabilities.put("cameras", cameraArray);
+        return capabilities;
+    }
+}
@@ -0,0 +1,62 @@
+package com.bitpay.cordova.qrscanner;
+
+import android.util.Log;
+
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Lifecycle of the camera preview. Commands move it between states with
+ * {@link #transition}, which refuses transitions from any unexpected state.
+ */
+final class CameraLifecycle {
+
+    enum State {
+        // No preview view, camera released
+        CLOSED,
+        // Preview view attached, camera open and previewing
+        PREVIEWING,
+        // Preview view attached, camera released (pausePreview or app in background)
+        PAUSED,
+        // Preview view attached, camera still open but not decoding, released once the grace period of standby ends
+        STANDBY
+    }
+
+    private final AtomicReference<State> state = new AtomicReference<>(State.CLOSED);
+
+    State get() {
+        return state.get();
+    }
+
+    boolean isPrepared() {
+        return state.get() != State.CLOSED;
+    }
+
+    boolean isPreviewing() {
+        return state.get() == State.PREVIEWING;
+    }
+
+    boolean isStandby() {
+        return state.get() == State.STANDBY;
+    }
+
+    /**
+     * Atomically moves from {@code from} to {@code to}.
+     *
+     * @return false (and leaves the state unchanged) if the lifecycle wasn't in {@code from}
+     */
+    boolean transition(State from, State to) {
+        if (state.compareAndSet(from, to))
+            return true;
+        Log.d("QRScanner", "Ignored camera transition " + from + " -> " + to + " in state " + state.get());
+        return false;
+    }
+
+    /**
+     * Moves to CLOSED from any state.
+     *
+     * @return the previous state
+     */
+    State close() {
+        return state.getAndSet(State.CLOSED);
+    }
+}
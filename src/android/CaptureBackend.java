@@ -0,0 +1,89 @@
+package com.bitpay.cordova.qrscanner;
+
+import android.view.View;
+
+import com.journeyapps.barcodescanner.BarcodeCallback;
+import com.journeyapps.barcodescanner.Size;
+
+/**
+ * The camera preview behind the webview, and the source of the frames to decode. Frames are
+ * decoded with the decoders of the FrameGovernor, results are delivered to the callback of the
+ * running decode like those of a BarcodeView.
+ *
+ * The view is created once and kept for the lifetime of the plugin. All methods are called on
+ * the UI thread.
+ *
+ * @see LegacyBackend
+ * @see Camera2Backend
+ */
+interface CaptureBackend {
+
+    // config.xml preference selecting the backend: legacy, camera2 or auto (the default)
+    String PREFERENCE = "QRScannerCameraBackend";
+    String LEGACY = "legacy";
+    String CAMERA2 = "camera2";
+    String AUTO = "auto";
+
+    /**
+     * The view showing the preview, to be added behind the webview.
+     */
+    View getView();
+
+    String getName();
+
+    /**
+     * Selects the camera (a legacy camera id), applied the next time the camera is opened.
+     */
+    void setCameraId(int cameraId);
+
+    int getCameraId();
+
+    /**
+     * The preview resolution, see PreviewSizePolicy. Applied the next time the camera is opened.
+     */
+    void setTargetPixels(long targetPixels);
+
+    /**
+     * The size of the frames picked when the camera was last opened, in camera orientation. Null before.
+     */
+    Size getPreviewSize();
+
+    /**
+     * Opens the camera and starts the preview.
+     */
+    void resume();
+
+    /**
+     * Stops the preview and releases the camera. A running decode goes on once resumed.
+     */
+    void pause();
+
+    /**
+     * Replaces the open camera with another one, keeping the view, the torch setting and the running
+     * decode. Only called while resumed. camera2 keeps its session plumbing, the legacy preview
+     * closes the camera and opens the new one.
+     */
+    void switchCamera(int cameraId);
+
+    void setTorch(boolean on);
+
+    /**
+     * Stops (or restarts) the frames of the open camera, which stays open: the preview shows the
+     * last frame until unfrozen. Reset by pause(). Backends which can't stop the frames without
+     * releasing the camera ignore this.
+     */
+    void setFrozen(boolean frozen);
+
+    /**
+     * Decodes frames until a code is found (or each code found, if continuous) with a decoder of
+     * the current configuration.
+     */
+    void decode(boolean continuous, BarcodeCallback callback);
+
+    void stopDecoding();
+
+    /**
+     * The decode mode changed: frames are decoded with new decoders from now on.
+     */
+    void decoderChanged();
+}
@@ -0,0 +1,215 @@
+package com.bitpay.cordova.qrscanner;
+
+import android.content.Context;
+import android.os.Build;
+import android.os.PowerManager;
+
+import com.google.zxing.DecodeHintType;
+import com.google.zxing.LuminanceSource;
+import com.google.zxing.Result;
+import com.journeyapps.barcodescanner.Decoder;
+import com.journeyapps.barcodescanner.DecoderFactory;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.util.Map;
+
+/**
+ * Limits how often preview frames are decoded. The decoder thread asks for the next frame as soon
+ * as it's done with the last one (frames arriving in the meantime are never queued), so frames
+ * arriving before the next decode is due are dropped here, without being decoded.
+ *
+ * The decode interval is the longest of
+ * <ul>
+ * <li>the interval of the target decode rate, if one is set,</li>
+ * <li>the average decode time divided by the maximum decoder load, i.e. the share of time the
+ * decoder thread may spend decoding (only while a target rate is set or the device is hot),</li>
+ * </ul>
+ * and grows while the device reports thermal throttling.
+ *
+ * Frames received, dropped and decoded are also recorded in the {@link ScanMetrics}.
+ *
+ * This is the DecoderFactory of the capture backends (see CaptureBackend), the frames it lets
+ * through are decoded by the {@link FrameDecoder}s of the scan engine. The result point callback of the view is dropped:
+ * there is no viewfinder to show possible result points.
+ */
+class FrameGovernor implements DecoderFactory {
+
+    static final double DEFAULT_MAX_LOAD = 0.5;
+    // Weight of the newest frame in the moving averages
+    private static final double SMOOTHING = 0.1;
+    // Rates are reported as 0 once no frame has arrived for this long (preview paused)
+    private static final long IDLE_NANOS = 1000000000L;
+
+    private final FrameDecoderFactory decoderFactory;
+    private final ScanMetrics metrics;
+    private volatile double targetRate;
+    private volatile double maxLoad = DEFAULT_MAX_LOAD;
+    private volatile int thermalStatus;
+    private Object thermalListener;
+
+    // Written by the decoder thread only
+    private volatile double decodeNanos;
+    private volatile double frameIntervalNanos;
+    private volatile double decodeIntervalNanos;
+    private volatile long lastFrameNanos;
+
+    FrameGovernor(FrameDecoderFactory decoderFactory, ScanMetrics metrics) {
+        this.decoderFactory = decoderFactory;
+        this.metrics = metrics;
+    }
+
+    /**
+     * Applies the decodeRate and maxDecoderLoad options, if present. Nothing is applied if one is invalid.
+     *
+     * @throws IllegalArgumentException if an option is out of range
+     */
+    void configure(JSONObject options) {
+        double rate = parseRate(options, targetRate);
+        double load = parseLoad(options, maxLoad);
+        targetRate = rate;
+        maxLoad = load;
+    }
+
+    /**
+     * Checks the options of configure without applying them.
+     *
+     * @throws IllegalArgumentException if an option is out of range
+     */
+    static void validate(JSONObject options) {
+        parseRate(options, 0);
+        parseLoad(options, DEFAULT_MAX_LOAD);
+    }
+
+    private static double parseRate(JSONObject options, double fallback) {
+        if (!options.has("decodeRate"))
+            return fallback;
+        double rate = options.optDouble("decodeRate", -1);
+        if (!(rate >= 0))
+            throw new IllegalArgumentException("decodeRate must be a positive number, or 0 for no limit");
+        return rate;
+    }
+
+    private static double parseLoad(JSONObject options, double fallback) {
+        if (!options.has("maxDecoderLoad"))
+            return fallback;
+        double load = options.optDouble("maxDecoderLoad", -1);
+        if (!(load > 0 && load <= 1))
+            throw new IllegalArgumentException("maxDecoderLoad must lie in (0, 1]");
+        return load;
+    }
+
+    /**
+     * Follows the thermal status of the device (Android 10+).
+     */
+    void watchThermalStatus(Context context) {
+        if (Build.VERSION.SDK_INT < Build.VERSION_CODES.Q || thermalListener != null)
+            return;
+        PowerManager powerManager = (PowerManager) context.getSystemService(Context.POWER_SERVICE);
+        if (powerManager == null)
+            return;
+        PowerManager.OnThermalStatusChangedListener listener = new PowerManager.OnThermalStatusChangedListener() {
+            @Override
+            public void onThermalStatusChanged(int status) {
+                thermalStatus = status;
+            }
+        };
+        thermalStatus = powerManager.getCurrentThermalStatus();
+        powerManager.addThermalStatusListener(listener);
+        thermalListener = listener;
+    }
+
+    void stopWatchingThermalStatus(Context context) {
+        if (Build.VERSION.SDK_INT < Build.VERSION_CODES.Q || thermalListener == null)
+            return;
+        PowerManager powerManager = (PowerManager) context.getSystemService(Context.POWER_SERVICE);
+        if (powerManager != null)
+            powerManager.removeThermalStatusListener((PowerManager.OnThermalStatusChangedListener) thermalListener);
+        thermalListener = null;
+    }
+
+    // Share of the target rate and decoder load left at the thermal status
+    private static double thermalScale(int thermalStatus) {
+        if (thermalStatus >= PowerManager.THERMAL_STATUS_SEVERE)
+            return 0.25;
+        if (thermalStatus >= PowerManager.THERMAL_STATUS_MODERATE)
+            return 0.5;
+        return 1;
+    }
+
+    private long minDecodeInterval() {
+        double rate = targetRate;
+        double scale = thermalScale(thermalStatus);
+        if (rate <= 0 && scale == 1)
+            return 0;
+        double rateInterval = rate > 0 ? 1e9 / (rate * scale) : 0;
+        return (long) Math.max(rateInterval, decodeNanos / (maxLoad * scale));
+    }
+
+    @Override
+    public Decoder createDecoder(Map<DecodeHintType, ?> baseHints) {
+        return new GovernedDecoder(decoderFactory.createDecoder());
+    }
+
+    /**
+     * The configured and the current rates, per second.
+     */
+    void putRates(JSONObject status) throws JSONException {
+        boolean idle = System.nanoTime() - lastFrameNanos > IDLE_NANOS;
+        double frameInterval = frameIntervalNanos;
+        double decodeInterval = decodeIntervalNanos;
+        long interval = minDecodeInterval();
+        status.put("targetDecodeRate", interval > 0 ? 1e9 / interval : 0);
+        status.put("frameRate", idle || frameInterval == 0 ? 0 : 1e9 / frameInterval);
+        status.put("decodeRate", idle || decodeInterval == 0 ? 0 : 1e9 / decodeInterval);
+        status.put("decodeTime", decodeNanos / 1e6);
+        status.put("thermalStatus", thermalStatus);
+    }
+
+    /**
+     * The average interval between the frames reaching the decoder, in ns, 0 before the first two.
+     */
+    double getFrameInterval() {
+        return frameIntervalNanos;
+    }
+
+    private static double smooth(double average, long sample) {
+        return average == 0 ? sample : average + SMOOTHING * (sample - average);
+    }
+
+    private class GovernedDecoder extends Decoder {
+        private final FrameDecoder decoder;
+        private long lastFrame;
+        private long lastDecode;
+        private long nextDecode;
+
+        GovernedDecoder(FrameDecoder decoder) {
+            super(null);
+            this.decoder = decoder;
+        }
+
+        @Override
+        public Result decode(LuminanceSource source) {
+            long now = System.nanoTime();
+            if (lastFrame != 0)
+                frameIntervalNanos = smooth(frameIntervalNanos, now - lastFrame);
+            lastFrame = now;
+            lastFrameNanos = now;
+            metrics.frameReceived(now);
+            if (nextDecode != 0 && now - nextDecode < 0) {
+                metrics.frameDropped();
+                return null;
+            }
+
+            Result result = decoder.decode(source);
+            long elapsed = System.nanoTime() - now;
+            decodeNanos = smooth(decodeNanos, elapsed);
+            metrics.frameDecoded(elapsed);
+            if (lastDecode != 0)
+                decodeIntervalNanos = smooth(decodeIntervalNanos, now - lastDecode);
+            lastDecode = now;
+            nextDecode = now + minDecodeInterval();
+            return result;
+        }
+    }
+}
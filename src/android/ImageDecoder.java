@@ -0,0 +1,206 @@
+package com.bitpay.cordova.qrscanner;
+
+import android.content.Context;
+import android.graphics.Bitmap;
+import android.graphics.BitmapFactory;
+import android.net.Uri;
+import android.util.Base64;
+
+import com.google.zxing.LuminanceSource;
+import com.google.zxing.RGBLuminanceSource;
+import com.google.zxing.Result;
+
+import java.io.ByteArrayInputStream;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * Decodes codes in still images: content URIs, file paths/URIs or base64 data.
+ *
+ * Images are decoded with a power of two sample size, so that their longer side is at most
+ * {@link #MAX_DIMENSION}: a 12 MP photo is never inflated in full, and codes large enough to
+ * be photographed survive the downsampling.
+ */
+final class ImageDecoder {
+
+    static final int MAX_DIMENSION = 2048;
+
+    /**
+     * Thrown when the image can't be read or isn't an image.
+     */
+    static class ImageUnavailableException extends IOException {
+        ImageUnavailableException(String message) {
+            super(message);
+        }
+
+        ImageUnavailableException(String message, Throwable cause) {
+            super(message, cause);
+        }
+    }
+
+    private interface ImageSource {
+        InputStream open() throws IOException;
+    }
+
+    /**
+     * An image whose bounds have been read, but not its pixels.
+     */
+    static final class Image {
+        private final ImageSource source;
+        final int sampleSize;
+        // Size after sampling
+        final int width;
+        final int height;
+
+        private Image(ImageSource source, int width, int height) {
+            this.source = source;
+            this.sampleSize = sampleSize(width, height);
+            this.width = (width + sampleSize - 1) / sampleSize;
+            this.height = (height + sampleSize - 1) / sampleSize;
+        }
+
+        /**
+         * Peak memory of loading and decoding the image: the RGB_565 bitmap, its ARGB pixels
+         * and the luminance, at the same time.
+         */
+        long estimateBytes() {
+            return (long) width * height * (2 + 4 + 1);
+        }
+    }
+
+    private final Context context;
+
+    ImageDecoder(Context context) {
+        this.context = context.getApplicationContext();
+    }
+
+    /**
+     * @return the code found in the image, or null if it contains none
+     * @throws ImageUnavailableException if the image can't be read
+     */
+    Result decode(String image, DecoderConfig config) throws ImageUnavailableException {
+        return decode(loadLuminance(open(image)), config);
+    }
+
+    /**
+     * Decodes with the formats and hints of the config, see {@link DecoderConfig#createImageDecoder}.
+     */
+    static Result decode(LuminanceSource source, DecoderConfig config) {
+        return ScanEngine.decodeImage(source, config);
+    }
+
+    static LuminanceSource loadLuminance(Image image) throws ImageUnavailableException {
+        Bitmap bitmap = load(image);
+        try {
+            int width = bitmap.getWidth();
+            int height = bitmap.getHeight();
+            int[] pixels = new int[width * height];
+            bitmap.getPixels(pixels, 0, width, 0, 0, width, height);
+            return new RGBLuminanceSource(width, height, pixels);
+        } finally {
+            bitmap.recycle();
+        }
+    }
+
+    /**
+     * Reads the bounds of the image.
+     *
+     * @throws ImageUnavailableException if the image can't be read
+     */
+    Image open(String image) throws ImageUnavailableException {
+        ImageSource source = source(image);
+        try {
+            BitmapFactory.Options options = new BitmapFactory.Options();
+            options.inJustDecodeBounds = true;
+            decodeStream(source, options);
+            if (options.outWidth <= 0 || options.outHeight <= 0)
+                throw new ImageUnavailableException("Not an image");
+            return new Image(source, options.outWidth, options.outHeight);
+        } catch (IOException e) {
+            if (e instanceof ImageUnavailableException)
+                throw (ImageUnavailableException) e;
+            throw new ImageUnavailableException("Unable to read the image", e);
+        }
+    }
+
+    private ImageSource source(final String image) throws ImageUnavailableException {
+        if (image == null || image.isEmpty())
+            throw new ImageUnavailableException("No image given");
+        if (image.startsWith("content:") || image.startsWith("file:") || image.startsWith("android.resource:")) {
+            final Uri uri = Uri.parse(image);
+            return new ImageSource() {
+                public InputStream open() throws IOException {
+                    InputStream stream = context.getContentResolver().openInputStream(uri);
+                    if (stream == null)
+                        throw new IOException("No content for " + uri);
+                    return stream;
+                }
+            };
+        }
+        if (image.startsWith("/")) {
+            return new ImageSource() {
+                public InputStream open() throws IOException {
+                    return new FileInputStream(image);
+                }
+            };
+        }
+        // Base64, optionally as a data URI
+        String data = image;
+        if (image.startsWith("data:")) {
+            int comma = image.indexOf(',');
+            if (comma < 0 || !image.substring(0, comma).endsWith(";base64"))
+                throw new ImageUnavailableException("Only base64 data URIs are supported");
+            data = image.substring(comma + 1);
+        }
+        final byte[] bytes;
+        try {
+            bytes = Base64.decode(data, Base64.DEFAULT);
+        } catch (IllegalArgumentException e) {
+            throw new ImageUnavailableException("Image is neither a URI, a path nor base64 data", e);
+        }
+        return new ImageSource() {
+            public InputStream open() {
+                return new ByteArrayInputStream(bytes);
+            }
+        };
+    }
+
+    private static Bitmap load(Image image) throws ImageUnavailableException {
+        try {
+            BitmapFactory.Options options = new BitmapFactory.Options();
+            options.inSampleSize = image.sampleSize;
+            // Only luminance is used, so half the memory of ARGB_8888 is enough
+            options.inPreferredConfig = Bitmap.Config.RGB_565;
+            Bitmap bitmap = decodeStream(image.source, options);
+            if (bitmap == null)
+                throw new ImageUnavailableException("Not an image");
+            return bitmap;
+        } catch (IOException e) {
+            if (e instanceof ImageUnavailableException)
+                throw (ImageUnavailableException) e;
+            throw new ImageUnavailableException("Unable to read the image", e);
+        } catch (OutOfMemoryError e) {
+            throw new ImageUnavailableException("Image too large", e);
+        }
+    }
+
+    private static Bitmap decodeStream(ImageSource source, BitmapFactory.Options options) throws IOException {
+        InputStream stream = source.open();
+        try {
+            return BitmapFactory.decodeStream(stream, null, options);
+        } finally {
+            stream.close();
+        }
+    }
+
+    /**
+     * The smallest power of two which brings both sides within MAX_DIMENSION.
+     */
+    static int sampleSize(int width, int height) {
+        int sampleSize = 1;
+        while (Math.max(width, height) / sampleSize > MAX_DIMENSION)
+            sampleSize *= 2;
+        return sampleSize;
+    }
+}
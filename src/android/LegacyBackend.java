@@ -0,0 +1,132 @@
+package com.bitpay.cordova.qrscanner;
+
+import android.content.Context;
+import android.view.View;
+
+import com.journeyapps.barcodescanner.BarcodeCallback;
+import com.journeyapps.barcodescanner.BarcodeView;
+import com.journeyapps.barcodescanner.CameraPreview;
+import com.journeyapps.barcodescanner.Size;
+import com.journeyapps.barcodescanner.camera.CameraSettings;
+
+/**
+ * The preview of zxing-android-embedded's BarcodeView, on the legacy android.hardware.Camera API.
+ * Works on every device, each frame is copied (and rotated) by the view before it is decoded: the
+ * view hands out frames through a one-shot preview callback, so the frame buffers can't be recycled.
+ * Used where camera2 doesn't drive the camera natively, see CaptureBackend.AUTO.
+ */
+class LegacyBackend implements CaptureBackend {
+
+    // Larger than any preview, so BarcodeView hands the whole frame to the decoder, which crops it to the scan region
+    private static final Size FULL_FRAME = new Size(Integer.MAX_VALUE, Integer.MAX_VALUE);
+
+    private final BarcodeView view;
+    private final FrameGovernor frameGovernor;
+    private final PreviewSizePolicy previewSizePolicy;
+
+    LegacyBackend(Context context, FrameGovernor frameGovernor, final ScanMetrics metrics) {
+        this.frameGovernor = frameGovernor;
+        view = new BarcodeView(context);
+        view.setDecoderFactory(frameGovernor);
+        view.setFramingRectSize(FULL_FRAME);
+        previewSizePolicy = new PreviewSizePolicy(view.getPreviewScalingStrategy());
+        view.setPreviewScalingStrategy(previewSizePolicy);
+        view.addStateListener(new CameraPreview.StateListener() {
+            public void previewSized() {
+            }
+
+            public void previewStarted() {
+                metrics.cameraOpened();
+            }
+
+            public void previewStopped() {
+            }
+
+            public void cameraError(Exception error) {
+                metrics.cameraFailed();
+            }
+
+            public void cameraClosed() {
+            }
+        });
+    }
+
+    @Override
+    public View getView() {
+        return view;
+    }
+
+    @Override
+    public String getName() {
+        return LEGACY;
+    }
+
+    @Override
+    public void setCameraId(int cameraId) {
+        CameraSettings settings = view.getCameraSettings();
+        settings.setRequestedCameraId(cameraId);
+        view.setCameraSettings(settings);
+    }
+
+    @Override
+    public int getCameraId() {
+        return view.getCameraSettings().getRequestedCameraId();
+    }
+
+    @Override
+    public void setTargetPixels(long targetPixels) {
+        previewSizePolicy.setTargetPixels(targetPixels);
+    }
+
+    @Override
+    public Size getPreviewSize() {
+        return previewSizePolicy.getPreviewSize();
+    }
+
+    @Override
+    public void resume() {
+        view.resume();
+    }
+
+    @Override
+    public void pause() {
+        view.pause();
+    }
+
+    @Override
+    public void switchCamera(int cameraId) {
+        // Not a fast switch: the view can only close the camera and open the new one. It restores
+        // the torch, and restarts the running decode once the new camera previews
+        view.pause();
+        setCameraId(cameraId);
+        view.resume();
+    }
+
+    @Override
+    public void setTorch(boolean on) {
+        view.setTorch(on);
+    }
+
+    @Override
+    public void setFrozen(boolean frozen) {
+        // CameraInstance can only stop the preview by closing the camera
+    }
+
+    @Override
+    public void decode(boolean continuous, BarcodeCallback callback) {
+        if (continuous)
+            view.decodeContinuous(callback);
+        else
+            view.decodeSingle(callback);
+    }
+
+    @Override
+    public void stopDecoding() {
+        view.stopDecoding();
+    }
+
+    @Override
+    public void decoderChanged() {
+        view.setDecoderFactory(frameGovernor);
+    }
+}
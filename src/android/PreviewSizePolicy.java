@@ -0,0 +1,112 @@
+package com.bitpay.cordova.qrscanner;
+
+import android.graphics.Rect;
+
+import com.journeyapps.barcodescanner.Size;
+import com.journeyapps.barcodescanner.camera.PreviewScalingStrategy;
+
+import java.util.List;
+
+/**
+ * Picks the camera preview size by the number of pixels the decoder should get, instead of by
+ * the size of the display. Every preview pixel is copied, rotated and binarized for each decoded
+ * frame, so the smallest size which still resolves the codes decodes fastest.
+ *
+ * How the preview is scaled into the view is left to the BarcodeView's own strategy.
+ */
+class PreviewSizePolicy extends PreviewScalingStrategy {
+
+    static final String DISPLAY = "display";
+    static final String FASTEST = "fastest";
+    static final String BALANCED = "balanced";
+    static final String MAX_DETAIL = "max-detail";
+
+    // VGA, enough for codes filling a good part of the frame
+    static final int FASTEST_PIXELS = 640 * 480;
+    // 720p, small or dense codes at arm's length
+    static final int BALANCED_PIXELS = 1280 * 720;
+    // A size this much off the aspect ratio of the view counts as far off as twice the pixels
+    private static final double ASPECT_WEIGHT = 2;
+
+    private final PreviewScalingStrategy scaling;
+    // 0 picks the size the BarcodeView would pick for the display, MAX_VALUE the largest size
+    private volatile long targetPixels;
+    private volatile Size previewSize;
+
+    PreviewSizePolicy(PreviewScalingStrategy scaling) {
+        this.scaling = scaling;
+    }
+
+    /**
+     * @param policy "display", "fastest", "balanced", "max-detail" or a target pixel count
+     * @throws IllegalArgumentException for any other value
+     */
+    static long parseTargetPixels(Object policy) {
+        if (policy instanceof Number) {
+            long pixels = ((Number) policy).longValue();
+            if (pixels <= 0)
+                throw new IllegalArgumentException("previewResolution must be a positive pixel count");
+            return pixels;
+        }
+        if (DISPLAY.equals(policy))
+            return 0;
+        if (FASTEST.equals(policy))
+            return FASTEST_PIXELS;
+        if (BALANCED.equals(policy))
+            return BALANCED_PIXELS;
+        if (MAX_DETAIL.equals(policy))
+            return Long.MAX_VALUE;
+        throw new IllegalArgumentException("Unknown previewResolution: " + policy);
+    }
+
+    /**
+     * Takes effect the next time the camera is opened.
+     */
+    void setTargetPixels(long targetPixels) {
+        this.targetPixels = targetPixels;
+    }
+
+    /**
+     * The size picked when the camera was last opened, in camera orientation. Null before.
+     */
+    Size getPreviewSize() {
+        return previewSize;
+    }
+
+    @Override
+    public Size getBestPreviewSize(List<Size> sizes, Size desired) {
+        long target = targetPixels;
+        Size best = target == 0 ? scaling.getBestPreviewSize(sizes, desired) : pick(sizes, desired, target);
+        previewSize = best;
+        return best;
+    }
+
+    /**
+     * The size closest to the target pixel count, preferring the aspect ratio of desired (if given).
+     */
+    static Size pick(List<Size> sizes, Size desired, long target) {
+        if (sizes == null || sizes.isEmpty())
+            return desired;
+        double desiredAspect = desired != null && desired.height > 0 ? (double) desired.width / desired.height : 0;
+        Size best = null;
+        double bestScore = Double.MAX_VALUE;
+        for (Size size : sizes) {
+            long pixels = (long) size.width * size.height;
+            if (pixels <= 0)
+                continue;
+            double score = Math.abs(Math.log((double) pixels / Math.min(target, Integer.MAX_VALUE)) / Math.log(2));
+            if (desiredAspect > 0)
+                score += ASPECT_WEIGHT * Math.abs(Math.log((double) size.width / size.height / desiredAspect) / Math.log(2));
+            if (score < bestScore) {
+                bestScore = score;
+                best = size;
+            }
+        }
+        return best != null ? best : sizes.get(0);
+    }
+
+    @Override
+    public Rect scalePreview(Size previewSize, Size viewfinderSize) {
+        return scaling.scalePreview(previewSize, viewfinderSize);
+    }
+}
@@ -3,25 +3,18 @@ package com.bitpay.cordova.qrscanner;
 import android.Manifest;
 import android.content.Context;
 import android.content.Intent;
-import android.content.pm.FeatureInfo;
 import android.content.pm.PackageManager;
 import android.graphics.Color;
 import android.hardware.camera2.CameraAccessException;
-import android.hardware.camera2.CameraCharacteristics;
-import android.hardware.camera2.CameraManager;
 import android.net.Uri;
 
-import com.google.zxing.BarcodeFormat;
-import com.google.zxing.DecodeHintType;
+import com.google.zxing.Result;
 import com.google.zxing.ResultPoint;
 import com.journeyapps.barcodescanner.BarcodeCallback;
 import com.journeyapps.barcodescanner.BarcodeResult;
 import com.journeyapps.barcodescanner.DecoratedBarcodeView;
-import com.journeyapps.barcodescanner.BarcodeView;
-import com.journeyapps.barcodescanner.CameraPreview;
-import com.journeyapps.barcodescanner.DefaultDecoderFactory;
+import com.journeyapps.barcodescanner.Size;
 import com.journeyapps.barcodescanner.camera.CameraInstance;
-import com.journeyapps.barcodescanner.camera.CameraSettings;
 import org.apache.cordova.CallbackContext;
 import org.apache.cordova.CordovaPlugin;
 import org.apache.cordova.PluginResult;
@@ -31,6 +24,8 @@ import org.json.JSONException;
 import org.json.JSONObject;
 import android.hardware.Camera;
 import android.os.Build;
+import android.os.Handler;
+import android.os.Looper;
 import android.provider.Settings;
 import androidx.appcompat.app.AppCompatActivity;
 import androidx.core.app.ActivityCompat;
@@ -41,10 +36,13 @@ import android.view.ViewGroup;
 import android.widget.FrameLayout;
 
 import java.io.IOException;
-import java.util.HashMap;
 import java.util.ArrayList;
 import java.util.List;
-import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicBoolean;
 
 import android.content.Context;
 import android.net.ConnectivityManager;
@@ -56,29 +54,63 @@ import android.net.VpnService;
 @SuppressWarnings("deprecation")
 public class QRScanner extends CordovaPlugin implements BarcodeCallback {
 
-    private CallbackContext callbackContext;
-    private boolean cameraClosing;
-    private static Boolean flashAvailable;
-    private boolean lightOn = false;
-    private boolean showing = false;
-    private boolean prepared = false;
-    private int currentCameraId = Camera.CameraInfo.CAMERA_FACING_BACK;
+    // Actions run one at a time, in the order they were received
+    private final ExecutorService commands = Executors.newSingleThreadExecutor();
+    // Callback of the action waiting for the permission request
+    private CallbackContext permissionCallback;
+    private volatile boolean lightOn = false;
+    private volatile boolean showing = false;
+    private volatile int currentCameraId = Camera.CameraInfo.CAMERA_FACING_BACK;
     private String[] permissions = {Manifest.permission.CAMERA};
-    //Preview started or paused
-    private boolean previewing = false;
-    private BarcodeView  mBarcodeView;
-    private boolean switchFlashOn = false;
-    private boolean switchFlashOff = false;
-    private boolean cameraPreviewing;
-    private boolean scanning = false;
+    //Preview view attached, and preview started or paused
+    private final CameraLifecycle camera = new CameraLifecycle();
+    // The preview view and camera, see CaptureBackend
+    private volatile CaptureBackend backend;
+    private String backendPreference = CaptureBackend.LEGACY;
+    private volatile boolean switchFlashOn = false;
+    private volatile boolean switchFlashOff = false;
     private CallbackContext nextScanCallback;
+    // Decoder configuration, scan region and scan state (single, or continuous until cancelScan)
+    private final ScanEngine engine = new ScanEngine();
+    private ImageDecoder imageDecoder;
+    private BatchImageDecoder batchImageDecoder;
+    private final ScanMetrics metrics = new ScanMetrics();
+    // Decodes the preview frames with the frame decoders of the engine
+    private final FrameGovernor frameGovernor = new FrameGovernor(engine.getFrameDecoderFactory(), metrics);
+    // See previewResolution option
+    private long previewTargetPixels = 0;
     private boolean shouldScanAgain;
-    private boolean denied;
-    private boolean authorized;
-    private boolean restricted;
+    private volatile boolean denied;
+    private volatile boolean authorized;
+    private volatile boolean restricted;
     private boolean oneTime = true;
     private boolean keepDenied = false;
     private boolean appPausedWithActivePreview = false;
+    // The preview was started by the warm start, the next prepare can use it as it is
+    private boolean warmCamera = false;
+
+    private static final String WARM_START_PREFERENCE = "QRScannerWarmStart";
+    private static final String WARM_START_PERMISSION = "permission";
+    private static final String WARM_START_CAMERA = "camera";
+    // How long the camera opened by the warm start stays open, in ms
+    private static final String WARM_START_GRACE_PERIOD_PREFERENCE = "QRScannerWarmStartGracePeriod";
+    private static final long DEFAULT_WARM_START_GRACE_PERIOD = 10000;
+    private long warmStartGracePeriod = DEFAULT_WARM_START_GRACE_PERIOD;
+    // Ends standby, see releaseAfter
+    private final Handler standbyTimer = new Handler(Looper.getMainLooper());
+    // Counts the standby calls, a timer only releases the camera if its standby is the last one. Command thread only
+    private int standbyGeneration;
+    private static final long DEFAULT_STANDBY_GRACE_PERIOD = 5000;
+    // Status fields, in the order of their bits in statusFlags()
+    private static final String[] STATUS_FIELDS = {"authorized", "denied", "restricted", "prepared", "scanning",
+            "previewing", "showing", "lightEnabled", "canOpenSettings", "canEnableLight", "canChangeCamera", "standby"};
+    // Kept open by watchStatus, only used on the command thread
+    private CallbackContext statusCallback;
+    private long lastPushedStatus;
+    private final AtomicBoolean statusPushPending = new AtomicBoolean();
+    private static final String PREFER_ULTRA_WIDE_PREFERENCE = "QRScannerPreferUltraWide";
+    // Use the back camera with the widest field of view, see CameraCapabilities
+    private boolean preferUltraWide = false;
 
     static class QRScannerError {
         private static final int UNEXPECTED_ERROR = 0,
@@ -89,15 +121,17 @@ public class QRScanner extends CordovaPlugin implements BarcodeCallback {
                 CAMERA_UNAVAILABLE = 5,
                 SCAN_CANCELED = 6,
                 LIGHT_UNAVAILABLE = 7,
-                OPEN_SETTINGS_UNAVAILABLE = 8;
+                OPEN_SETTINGS_UNAVAILABLE = 8,
+                INVALID_OPTIONS = 9,
+                IMAGE_UNAVAILABLE = 10,
+                CODE_NOT_FOUND = 11;
     }
 
     @Override
     public boolean execute(final String action, final JSONArray args, final CallbackContext callbackContext) throws JSONException {
-        this.callbackContext = callbackContext;
         try {
             if (action.equals("show")) {
-                cordova.getThreadPool().execute(new Runnable() {
+                enqueue(callbackContext, new Runnable() {
                     public void run() {
                         show(callbackContext);
                     }
@@ -105,13 +139,67 @@ public class QRScanner extends CordovaPlugin implements BarcodeCallback {
                 return true;
             }
             else if(action.equals("scan")) {
-                cordova.getThreadPool().execute(new Runnable() {
+                enqueue(callbackContext, new Runnable() {
+                    public void run() {
+                        if (!applyDecoderOptions(args, false, callbackContext))
+                            return;
+                        setContinuous(false);
+                        scan(callbackContext);
+                    }
+                });
+                return true;
+            }
+            else if(action.equals("scanContinuous")) {
+                enqueue(callbackContext, new Runnable() {
                     public void run() {
+                        if (!applyDecoderOptions(args, false, callbackContext))
+                            return;
+                        setContinuous(true);
                         scan(callbackContext);
                     }
                 });
                 return true;
             }
+            else if(action.equals("setScanRegion")) {
+                enqueue(callbackContext, new Runnable() {
+                    public void run() {
+                        setScanRegion(callbackContext, args);
+                    }
+                });
+                return true;
+            }
+            else if(action.equals("getScanRegion")) {
+                enqueue(callbackContext, new Runnable() {
+                    public void run() {
+                        getScanRegion(callbackContext);
+                    }
+                });
+                return true;
+            }
+            else if(action.equals("getCameraCapabilities")) {
+                enqueue(callbackContext, new Runnable() {
+                    public void run() {
+                        getCameraCapabilities(callbackContext);
+                    }
+                });
+                return true;
+            }
+            else if(action.equals("scanImage")) {
+                enqueue(callbackContext, new Runnable() {
+                    public void run() {
+                        scanImage(args, callbackContext);
+                    }
+                });
+                return true;
+            }
+            else if(action.equals("scanImages")) {
+                enqueue(callbackContext, new Runnable() {
+                    public void run() {
+                        scanImages(args, callbackContext);
+                    }
+                });
+                return true;
+            }
             else if(action.equals("isVPNConnected")) {
                 cordova.getThreadPool().execute(new Runnable() {
                     public void run() {
@@ -121,7 +209,7 @@ public class QRScanner extends CordovaPlugin implements BarcodeCallback {
                 return true;
             }
             else if(action.equals("cancelScan")) {
-                cordova.getThreadPool().execute(new Runnable() {
+                enqueue(callbackContext, new Runnable() {
                     public void run() {
                         cancelScan(callbackContext);
                     }
@@ -129,7 +217,7 @@ public class QRScanner extends CordovaPlugin implements BarcodeCallback {
                 return true;
             }
             else if(action.equals("openSettings")) {
-                cordova.getThreadPool().execute(new Runnable() {
+                enqueue(callbackContext, new Runnable() {
                     public void run() {
                         openSettings(callbackContext);
                     }
@@ -137,15 +225,23 @@ public class QRScanner extends CordovaPlugin implements BarcodeCallback {
                 return true;
             }
             else if(action.equals("pausePreview")) {
-                cordova.getThreadPool().execute(new Runnable() {
+                enqueue(callbackContext, new Runnable() {
                     public void run() {
                         pausePreview(callbackContext);
                     }
                 });
                 return true;
             }
+            else if(action.equals("standby")) {
+                enqueue(callbackContext, new Runnable() {
+                    public void run() {
+                        standby(callbackContext, args);
+                    }
+                });
+                return true;
+            }
             else if(action.equals("useCamera")) {
-                cordova.getThreadPool().execute(new Runnable() {
+                enqueue(callbackContext, new Runnable() {
                     public void run() {
                         switchCamera(callbackContext, args);
                     }
@@ -153,7 +249,7 @@ public class QRScanner extends CordovaPlugin implements BarcodeCallback {
                 return true;
             }
             else if(action.equals("resumePreview")) {
-                cordova.getThreadPool().execute(new Runnable() {
+                enqueue(callbackContext, new Runnable() {
                     public void run() {
                         resumePreview(callbackContext);
                     }
@@ -161,7 +257,7 @@ public class QRScanner extends CordovaPlugin implements BarcodeCallback {
                 return true;
             }
             else if(action.equals("hide")) {
-                cordova.getThreadPool().execute(new Runnable() {
+                enqueue(callbackContext, new Runnable() {
                     public void run() {
                         hide(callbackContext);
                     }
@@ -169,18 +265,12 @@ public class QRScanner extends CordovaPlugin implements BarcodeCallback {
                 return true;
             }
             else if (action.equals("enableLight")) {
-                cordova.getThreadPool().execute(new Runnable() {
+                enqueue(callbackContext, new Runnable() {
                     public void run() {
-                        while (cameraClosing) {
-                            try {
-                                Thread.sleep(10);
-                            } catch (InterruptedException ignore) {
-                            }
-                        }
                         switchFlashOn = true;
                         if (hasFlash()) {
                             if (!hasPermission()) {
-                                requestPermission(33);
+                                requestPermission(33, callbackContext);
                             } else
                                 enableLight(callbackContext);
                         } else {
@@ -191,12 +281,12 @@ public class QRScanner extends CordovaPlugin implements BarcodeCallback {
                 return true;
             }
             else if (action.equals("disableLight")) {
-                cordova.getThreadPool().execute(new Runnable() {
+                enqueue(callbackContext, new Runnable() {
                     public void run() {
                         switchFlashOff = true;
                         if (hasFlash()) {
                             if (!hasPermission()) {
-                                requestPermission(33);
+                                requestPermission(33, callbackContext);
                             } else
                                 disableLight(callbackContext);
                         } else {
@@ -207,38 +297,68 @@ public class QRScanner extends CordovaPlugin implements BarcodeCallback {
                 return true;
             }
             else if (action.equals("prepare")) {
-                cordova.getThreadPool().execute(new Runnable() {
+                enqueue(callbackContext, new Runnable() {
                     public void run() {
-                        cordova.getActivity().runOnUiThread(new Runnable() {
-                            @Override
-                            public void run() {
-                                try {
-                                    currentCameraId = args.getInt(0);
-                                } catch (JSONException e) {
-                                }
-                                prepare(callbackContext, args);
-                            }
-                        });
+                        if (!applyDecoderOptions(args, true, callbackContext))
+                            return;
+                        try {
+                            currentCameraId = args.getInt(0);
+                        } catch (JSONException e) {
+                        }
+                        prepare(callbackContext, args);
                     }
                 });
                 return true;
             }
             else if (action.equals("destroy")) {
-                cordova.getThreadPool().execute(new Runnable() {
+                enqueue(callbackContext, new Runnable() {
                     public void run() {
                         destroy(callbackContext);
                     }
                 });
                 return true;
             }
+            else if (action.equals("getMetrics")) {
+                enqueue(callbackContext, new Runnable() {
+                    public void run() {
+                        getMetrics(callbackContext);
+                    }
+                });
+                return true;
+            }
+            else if (action.equals("resetMetrics")) {
+                enqueue(callbackContext, new Runnable() {
+                    public void run() {
+                        metrics.reset();
+                        callbackContext.success();
+                    }
+                });
+                return true;
+            }
             else if (action.equals("getStatus")) {
-                cordova.getThreadPool().execute(new Runnable() {
+                enqueue(callbackContext, new Runnable() {
                     public void run() {
                         getStatus(callbackContext);
                     }
                 });
                 return true;
             }
+            else if (action.equals("watchStatus")) {
+                enqueue(callbackContext, new Runnable() {
+                    public void run() {
+                        watchStatus(callbackContext);
+                    }
+                });
+                return true;
+            }
+            else if (action.equals("unwatchStatus")) {
+                enqueue(callbackContext, new Runnable() {
+                    public void run() {
+                        unwatchStatus(callbackContext);
+                    }
+                });
+                return true;
+            }
             else {
                 return false;
             }
@@ -248,83 +368,181 @@ public class QRScanner extends CordovaPlugin implements BarcodeCallback {
         }
     }
 
-    public static int getUltraWideCameraId(Context context) {
-        if(true) {
-            return Camera.CameraInfo.CAMERA_FACING_BACK;
-        }
-        // no way to accurately pick the wide camera without sometimes returning the front camera.
-        //        https://stackoverflow.com/questions/57115158/camera-2-cameracharacteristics-seem-to-show-incorrect-data
-        CameraManager cameraManager = null;
-        if (android.os.Build.VERSION.SDK_INT >= android.os.Build.VERSION_CODES.LOLLIPOP) {
-            cameraManager = (CameraManager) context.getSystemService(Context.CAMERA_SERVICE);
+    @Override
+    protected void pluginInitialize() {
+        // Loaded at startup (onload) for the warm start: without it, only the preferences are read here
+        preferUltraWide = preferences.getBoolean(PREFER_ULTRA_WIDE_PREFERENCE, false);
+        backendPreference = preferences.getString(CaptureBackend.PREFERENCE, CaptureBackend.AUTO);
+        final String warmStart = preferences.getString(WARM_START_PREFERENCE, "none");
+        warmStartGracePeriod = Math.max(0, preferences.getInteger(WARM_START_GRACE_PERIOD_PREFERENCE, (int) DEFAULT_WARM_START_GRACE_PERIOD));
+        if (WARM_START_PERMISSION.equals(warmStart) || WARM_START_CAMERA.equals(warmStart)) {
+            enqueue(null, new Runnable() {
+                public void run() {
+                    warmStart(WARM_START_CAMERA.equals(warmStart));
+                }
+            });
         }
-        float smallestFocalLength = 99;
-        int bestCameraId = Camera.CameraInfo.CAMERA_FACING_BACK;
-        try {
-            if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.LOLLIPOP) {
-                for (String cameraId : cameraManager.getCameraIdList()) {
-                    CameraCharacteristics characteristics = cameraManager.getCameraCharacteristics(cameraId);
+    }
 
-                    // Check if this is a back-facing camera
-                    Integer lensFacing = characteristics.get(CameraCharacteristics.LENS_FACING);
-                    Integer sensorOrientation =  characteristics.get(CameraCharacteristics.SENSOR_ORIENTATION);
-                    Float focalLength = characteristics.get(CameraCharacteristics.LENS_INFO_AVAILABLE_FOCAL_LENGTHS)[0];
-                    Float sensorSize = characteristics.get(CameraCharacteristics.SENSOR_INFO_PHYSICAL_SIZE).getWidth();
-//                    Log.d("CameraInfo", "Sensor Orientation: " + sensorOrientation);
-                    if (lensFacing != null && lensFacing == CameraCharacteristics.LENS_FACING_BACK && sensorOrientation == 90) {
+    /**
+     * Does the startup work of prepare ahead of time: checks the permission, resolves the camera and its
+     * capabilities and, with openCamera, opens the camera behind the (still opaque) webview so that
+     * prepare and scan don't have to. The camera is kept in standby (not decoding, camera2 previews
+     * frozen) for the warm start grace period, then released. Never asks for the permission, that's
+     * left to prepare/scan.
+     */
+    private void warmStart(boolean openCamera) {
+        if (!hasCamera() || !hasPermission())
+            return;
+        authorized = true;
+        getCapabilities();
+        currentCameraId = getBestCameraId();
+        if (openCamera && !camera.isPrepared() && webView.getView().getParent() != null) {
+            setupCamera(null);
+            warmCamera = true;
+            enterStandby(true, warmStartGracePeriod);
+        }
+    }
 
-                        // Check for the ultra-wide camera by field of view or other characteristics
+    /**
+     * Queues an action on the command thread. Actions never overlap, and wait for the UI
+     * work they start (see runOnUiThreadAndWait), so each one sees the effects of the last.
+     * Once the plugin is destroyed, actions are dropped.
+     */
+    private void enqueue(final CallbackContext callbackContext, final Runnable command) {
+        try {
+            commands.execute(new Runnable() {
+                public void run() {
+                    try {
+                        command.run();
+                    } catch (RuntimeException e) {
+                        Log.e("QRScanner", "Command failed", e);
+                        if (callbackContext != null)
+                            callbackContext.error(QRScannerError.UNEXPECTED_ERROR);
+                    }
+                    requestStatusPush();
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            Log.w("QRScanner", "Command dropped, the plugin is destroyed");
+        }
+    }
 
+    /**
+     * Queues a single status check behind the commands already queued, so a burst of
+     * commands pushes (at most) one status update once the last of them has run.
+     */
+    private void requestStatusPush() {
+        if (statusCallback == null || !statusPushPending.compareAndSet(false, true))
+            return;
+        try {
+            commands.execute(new Runnable() {
+                public void run() {
+                    statusPushPending.set(false);
+                    pushStatus(false);
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            statusPushPending.set(false);
+        }
+    }
 
-                        // Example logic to detect ultra-wide (adjust based on device testing)
-                        if (focalLength < smallestFocalLength) { // Replace with your condition
-                            smallestFocalLength = focalLength;
-                            bestCameraId = Integer.parseInt(cameraId) ;
-                        }
-                    }
+    /**
+     * Runs the task on the UI thread and blocks the calling command until it has completed.
+     */
+    private void runOnUiThreadAndWait(final Runnable task) {
+        if (Looper.myLooper() == Looper.getMainLooper()) {
+            task.run();
+            return;
+        }
+        final CountDownLatch done = new CountDownLatch(1);
+        cordova.getActivity().runOnUiThread(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    task.run();
+                } finally {
+                    done.countDown();
                 }
             }
-        } catch (Exception e) {
-            e.printStackTrace();
-            return Camera.CameraInfo.CAMERA_FACING_BACK;
+        });
+        try {
+            done.await();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
         }
-        return bestCameraId;
+    }
+
+    public static int getUltraWideCameraId(Context context) {
+        return CameraCapabilities.get(context).getUltraWideCameraId();
     }
 
     public int getBestCameraId(){
-        if(mBarcodeView == null)return 0;
-        return getUltraWideCameraId(mBarcodeView.getContext());
+        if(!preferUltraWide)
+            return Camera.CameraInfo.CAMERA_FACING_BACK;
+        return getUltraWideCameraId(cordova.getActivity());
+    }
+
+    // The camera to open for the camera asked for: the best back camera for the back camera
+    private int resolveCameraId(int cameraId) {
+        return cameraId == Camera.CameraInfo.CAMERA_FACING_BACK ? getBestCameraId() : cameraId;
     }
 
 
     @Override
     public void onPause(boolean multitasking) {
-        if (previewing) {
-            this.appPausedWithActivePreview = true;
-            this.pausePreview(null);
-        }
+        enqueue(null, new Runnable() {
+            public void run() {
+                if (camera.isPreviewing()) {
+                    appPausedWithActivePreview = true;
+                    pausePreview(null);
+                } else if (camera.isStandby()) {
+                    // Stays paused, until resumePreview or scan
+                    pausePreview(null);
+                }
+            }
+        });
     }
 
     @Override
     public void onResume(boolean multitasking) {
-        if (this.appPausedWithActivePreview) {
-            this.appPausedWithActivePreview = false;
-            this.resumePreview(null);
-        }
+        enqueue(null, new Runnable() {
+            public void run() {
+                if (appPausedWithActivePreview) {
+                    appPausedWithActivePreview = false;
+                    resumePreview(null);
+                }
+            }
+        });
     }
 
-    private boolean hasFlash() {
-        if (flashAvailable == null) {
-            flashAvailable = false;
-            final PackageManager packageManager = this.cordova.getActivity().getPackageManager();
-            for (final FeatureInfo feature : packageManager.getSystemAvailableFeatures()) {
-                if (PackageManager.FEATURE_CAMERA_FLASH.equalsIgnoreCase(feature.name)) {
-                    flashAvailable = true;
-                    break;
+    @Override
+    public void onDestroy() {
+        // A pending standby timer would queue its release on the stopped command thread
+        standbyTimer.removeCallbacksAndMessages(null);
+        if (camera.close() != CameraLifecycle.State.CLOSED) {
+            runOnUiThreadAndWait(new Runnable() {
+                @Override
+                public void run() {
+                    if (backend != null) {
+                        backend.stopDecoding();
+                        backend.pause();
+                    }
                 }
-            }
+            });
         }
-        return flashAvailable;
+        commands.shutdownNow();
+        frameGovernor.stopWatchingThermalStatus(cordova.getActivity());
+        if (batchImageDecoder != null)
+            batchImageDecoder.shutdown();
+    }
+
+    private CameraCapabilities getCapabilities() {
+        return CameraCapabilities.get(cordova.getActivity());
+    }
+
+    private boolean hasFlash() {
+        return getCapabilities().hasFlash;
     }
 
     private void switchFlash(boolean toggleLight, CallbackContext callbackContext) {
@@ -340,38 +558,31 @@ public class QRScanner extends CordovaPlugin implements BarcodeCallback {
         }
     }
 
-    private String boolToNumberString(Boolean bool) {
-        if(bool)
-            return "1";
-        else
-            return "0";
-    }
-
     private void doswitchFlash(final boolean toggleLight, final CallbackContext callbackContext) throws IOException, CameraAccessException {        //No flash for front facing cameras
         if (getCurrentCameraId() == Camera.CameraInfo.CAMERA_FACING_FRONT) {
             callbackContext.error(QRScannerError.LIGHT_UNAVAILABLE);
             return;
         }
-        if (!prepared) {
+        if (!camera.isPrepared()) {
             if (toggleLight)
                 lightOn = true;
             else
                 lightOn = false;
             prepare(callbackContext, new JSONArray());
         }
-        cordova.getActivity().runOnUiThread(new Runnable() {
+        runOnUiThreadAndWait(new Runnable() {
             @Override
             public void run() {
-                if (mBarcodeView != null) {
-                    mBarcodeView.setTorch(toggleLight);
+                if (backend != null) {
+                    backend.setTorch(toggleLight);
                     if (toggleLight)
                         lightOn = true;
                     else
                         lightOn = false;
                 }
-                getStatus(callbackContext);
             }
         });
+        getStatus(callbackContext);
     }
 
     public int getCurrentCameraId() {
@@ -379,17 +590,13 @@ public class QRScanner extends CordovaPlugin implements BarcodeCallback {
     }
 
     private boolean canChangeCamera() {
-        int numCameras= Camera.getNumberOfCameras();
-        for(int i=0;i<numCameras;i++){
-            Camera.CameraInfo info = new Camera.CameraInfo();
-            Camera.getCameraInfo(i, info);
-            if(info.CAMERA_FACING_FRONT == info.facing){
-                return true;
-            }
-        }
-        return false;
+        return getCapabilities().hasFrontFacingCamera();
     }
 
+    /**
+     * Switches to another camera. With the preview set up, only the camera is swapped: the view, the
+     * decoder, the torch and a running scan (with its callback) carry over to the new camera.
+     */
     public void switchCamera(CallbackContext callbackContext, JSONArray args) {
         int cameraId = 0;
 
@@ -397,30 +604,70 @@ public class QRScanner extends CordovaPlugin implements BarcodeCallback {
             cameraId = args.getInt(0);
         } catch (JSONException d) {
             callbackContext.error(QRScannerError.UNEXPECTED_ERROR);
+            return;
         }
-        currentCameraId = cameraId;
-        if(scanning) {
-            scanning = false;
-            prepared = false;
-            if(cameraPreviewing) {
-                this.cordova.getActivity().runOnUiThread(new Runnable() {
-                    @Override
-                    public void run() {
-                        ((ViewGroup) mBarcodeView.getParent()).removeView(mBarcodeView);
-                        cameraPreviewing = false;
-                    }
-                });
+        if (backend == null || !camera.isPrepared()) {
+            currentCameraId = cameraId;
+            if(engine.isScanning()) {
+                engine.stopScan();
+                prepare(callbackContext, new JSONArray());
+                scan(this.nextScanCallback);
             }
-            closeCamera();
-            prepare(callbackContext, new JSONArray());
-            scan(this.nextScanCallback);
+            else
+                prepare(callbackContext, new JSONArray());
+            return;
         }
-        else
-            prepare(callbackContext, new JSONArray());
+
+        final int resolved = resolveCameraId(cameraId);
+        final CameraCapabilities.CameraInfo info = getCapabilities().getCamera(resolved);
+        if (info == null) {
+            if (cameraId == Camera.CameraInfo.CAMERA_FACING_BACK)
+                callbackContext.error(QRScannerError.BACK_CAMERA_UNAVAILABLE);
+            else if (cameraId == Camera.CameraInfo.CAMERA_FACING_FRONT)
+                callbackContext.error(QRScannerError.FRONT_CAMERA_UNAVAILABLE);
+            else
+                callbackContext.error(QRScannerError.CAMERA_UNAVAILABLE);
+            return;
+        }
+        currentCameraId = resolved;
+        if (backend.getCameraId() != resolved) {
+            // A paused camera is swapped when resumed. The light follows to cameras with a flash
+            final boolean open = camera.isPreviewing() || camera.isStandby();
+            final boolean torch = open && (lightOn || switchFlashOn) && info.flash;
+            // The legacy preview closes and reopens the camera, which isn't a switch worth timing
+            if (open && engine.isScanning() && CaptureBackend.CAMERA2.equals(backend.getName()))
+                metrics.cameraSwitching(frameGovernor.getFrameInterval());
+            runOnUiThreadAndWait(new Runnable() {
+                @Override
+                public void run() {
+                    if (open) {
+                        backend.setTorch(torch);
+                        // Measured as cameraSwitch only, not as an opening of the camera
+                        backend.switchCamera(resolved);
+                    } else {
+                        backend.setCameraId(resolved);
+                    }
+                }
+            });
+            lightOn = torch;
+        }
+        getStatus(callbackContext);
+    }
+
+    public void onRequestPermissionResult(final int requestCode, final String[] permissions,
+                                          final int[] grantResults) throws JSONException {
+        enqueue(permissionCallback, new Runnable() {
+            public void run() {
+                handlePermissionResult(requestCode, permissions, grantResults);
+            }
+        });
     }
 
-    public void onRequestPermissionResult(int requestCode, String[] permissions,
-                                          int[] grantResults) throws JSONException {
+    private void handlePermissionResult(int requestCode, String[] permissions, int[] grantResults) {
+        CallbackContext callbackContext = permissionCallback;
+        permissionCallback = null;
+        if (callbackContext == null)
+            return;
         oneTime = false;
         if (requestCode == 33) {
             // for each permission check if the user granted/denied them
@@ -447,13 +694,13 @@ public class QRScanner extends CordovaPlugin implements BarcodeCallback {
                     denied = false;
                     switch (requestCode) {
                         case 33:
-                            if(switchFlashOn && !scanning && !switchFlashOff)
+                            if(switchFlashOn && !engine.isScanning() && !switchFlashOff)
                                 switchFlash(true, callbackContext);
-                            else if(switchFlashOff && !scanning)
+                            else if(switchFlashOff && !engine.isScanning())
                                 switchFlash(false, callbackContext);
                             else {
-                                setupCamera(callbackContext, new JSONArray());
-                                if(!scanning)
+                                setupCamera(callbackContext);
+                                if(!engine.isScanning())
                                     getStatus(callbackContext);
                             }
                             break;
@@ -479,26 +726,33 @@ public class QRScanner extends CordovaPlugin implements BarcodeCallback {
         return true;
     }
 
-    private void requestPermission(int requestCode) {
+    private void requestPermission(int requestCode, CallbackContext callbackContext) {
+        permissionCallback = callbackContext;
         PermissionHelper.requestPermissions(this, requestCode, permissions);
     }
 
-    private void closeCamera() {
-        cameraClosing = true;
-        cordova.getActivity().runOnUiThread(new Runnable() {
+    /**
+     * Releases the camera and detaches the preview view (which is kept for the next prepare),
+     * completing before it returns.
+     */
+    private void closePreview() {
+        if (camera.close() == CameraLifecycle.State.CLOSED)
+            return;
+        runOnUiThreadAndWait(new Runnable() {
             @Override
             public void run() {
-                if (mBarcodeView != null) {
-                    mBarcodeView.pause();
+                if (backend != null) {
+                    backend.pause();
+                    ViewGroup parent = (ViewGroup) backend.getView().getParent();
+                    if (parent != null)
+                        parent.removeView(backend.getView());
                 }
-
-                cameraClosing = false;
             }
         });
     }
 
     private void makeOpaque() {
-        this.cordova.getActivity().runOnUiThread(new Runnable() {
+        runOnUiThreadAndWait(new Runnable() {
             @Override
             public void run() {
                 webView.getView().setBackgroundColor(Color.TRANSPARENT);
@@ -508,105 +762,194 @@ public class QRScanner extends CordovaPlugin implements BarcodeCallback {
     }
 
     private boolean hasCamera() {
-        if (this.cordova.getActivity().getPackageManager().hasSystemFeature(PackageManager.FEATURE_CAMERA)){
-            return true;
-        } else {
-            return false;
-        }
+        return getCapabilities().hasCamera;
     }
 
     private boolean hasFrontCamera() {
-        if (this.cordova.getActivity().getPackageManager().hasSystemFeature(PackageManager.FEATURE_CAMERA_FRONT)){
-            return true;
-        } else {
+        return getCapabilities().hasFrontCamera;
+    }
+    /**
+     * Selects the decoder configuration from the options object (or "only-2d") in the action arguments.
+     * Without options, prepare falls back to the default configuration while scan keeps the current one.
+     */
+    private boolean applyDecoderOptions(JSONArray args, boolean resetWhenAbsent, CallbackContext callbackContext) {
+        // All options are checked before any is applied, so invalid options change nothing
+        long targetPixels = previewTargetPixels;
+        try {
+            engine.validate(args);
+            for (int i = 0; i < args.length(); i++) {
+                JSONObject options = args.optJSONObject(i);
+                if (options != null)
+                    FrameGovernor.validate(options);
+                if (options != null && options.has("previewResolution"))
+                    targetPixels = PreviewSizePolicy.parseTargetPixels(options.opt("previewResolution"));
+            }
+        } catch (IllegalArgumentException e) {
+            Log.w("QRScanner", "Invalid decoder options: " + e.getMessage());
+            callbackContext.error(QRScannerError.INVALID_OPTIONS);
             return false;
         }
-    }
-    private void setupCamera(CallbackContext callbackContext, final JSONArray args) {
-        boolean only2d = false;
+        engine.configure(args, resetWhenAbsent);
         for (int i = 0; i < args.length(); i++) {
-            try {
-                if (args.getString(i).equals("only-2d")) {
-                    only2d = true;
-                    break;
-                }
-            }catch(Exception e){
+            JSONObject options = args.optJSONObject(i);
+            if (options != null)
+                frameGovernor.configure(options);
+        }
+        previewTargetPixels = targetPixels;
+        return true;
+    }
 
+    /**
+     * The backend selected by the QRScannerCameraBackend preference: camera2 if asked for, or with
+     * "auto" for cameras which camera2 drives natively (Android 5+), else the legacy preview.
+     */
+    private CaptureBackend createBackend() {
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.LOLLIPOP) {
+            CameraCapabilities.CameraInfo info = getCapabilities().getCamera(currentCameraId);
+            if (CaptureBackend.CAMERA2.equals(backendPreference)
+                    || (CaptureBackend.AUTO.equals(backendPreference) && info != null && info.hasFullCamera2Support())) {
+                return new Camera2Backend(cordova.getActivity(), frameGovernor, metrics, new Runnable() {
+                    public void run() {
+                        enqueue(null, new Runnable() {
+                            public void run() {
+                                fallBackToLegacy();
+                            }
+                        });
+                    }
+                }, new Runnable() {
+                    public void run() {
+                        enqueue(null, new Runnable() {
+                            public void run() {
+                                cameraDisconnected();
+                            }
+                        });
+                    }
+                });
             }
         }
-        final boolean only2dCodes = only2d;
-        cordova.getActivity().runOnUiThread(new Runnable() {
-            @Override
-            public void run() {
-                // Create our Preview view and set it as the content of our activity.
-                mBarcodeView = new BarcodeView(cordova.getActivity());
-                currentCameraId = getBestCameraId();
-                //Configure the decoder
-                ArrayList<BarcodeFormat> formatList = new ArrayList<BarcodeFormat>();
-//                formatList.add(BarcodeFormat.ITF);
-//                formatList.add(BarcodeFormat.MAXICODE);
-                if(only2dCodes){
-                    formatList.add(BarcodeFormat.DATA_MATRIX);
-                    formatList.add(BarcodeFormat.QR_CODE);
-                }else{
-                    formatList.add(BarcodeFormat.CODABAR);
-                    formatList.add(BarcodeFormat.CODE_128);
-                    formatList.add(BarcodeFormat.CODE_39);
-                    formatList.add(BarcodeFormat.CODE_93);
-                    formatList.add(BarcodeFormat.DATA_MATRIX);
-                    formatList.add(BarcodeFormat.EAN_13);
-                    formatList.add(BarcodeFormat.EAN_8);
-                    formatList.add(BarcodeFormat.QR_CODE);
-                    formatList.add(BarcodeFormat.RSS_14);
-                    formatList.add(BarcodeFormat.RSS_EXPANDED);
-                    formatList.add(BarcodeFormat.UPC_A);
-                    formatList.add(BarcodeFormat.UPC_E);
-                    formatList.add(BarcodeFormat.UPC_EAN_EXTENSION);
-                }
+        return new LegacyBackend(cordova.getActivity(), frameGovernor, metrics);
+    }
 
+    /**
+     * Replaces a camera2 backend which failed to open the camera with the legacy preview, for the
+     * rest of the app's lifetime, and restarts the preview (and the running scan) on it.
+     */
+    private void fallBackToLegacy() {
+        if (backend == null || CaptureBackend.LEGACY.equals(backend.getName()))
+            return;
+        Log.w("QRScanner", "Falling back to the legacy camera preview");
+        backendPreference = CaptureBackend.LEGACY;
+        boolean prepared = camera.isPrepared();
+        closePreview();
+        backend = null;
+        if (!prepared)
+            return;
+        setupCamera(null);
+        if (lightOn) {
+            runOnUiThreadAndWait(new Runnable() {
+                @Override
+                public void run() {
+                    backend.setTorch(true);
+                }
+            });
+        }
+        if (engine.isScanning() && nextScanCallback != null)
+            scan(nextScanCallback);
+    }
 
+    /**
+     * Pauses the preview of a camera taken by another app. A preview which was running is resumed
+     * with the app, like after onPause; resumePreview reopens the camera before that.
+     */
+    private void cameraDisconnected() {
+        if (camera.isPreviewing())
+            appPausedWithActivePreview = true;
+        pausePreview(null);
+    }
 
-//                 formatList.add(BarcodeFormat.ITF);
-//                 formatList.add(BarcodeFormat.PDF_417);
-//                 formatList.add(BarcodeFormat.AZTEC);
-                Map<DecodeHintType, Object> hints = new HashMap<>();
-                hints.put(DecodeHintType.TRY_HARDER, Boolean.TRUE);
-                mBarcodeView.setDecoderFactory(new DefaultDecoderFactory(formatList, hints, null));
+    /**
+     * Starts (or restarts) the camera preview. The preview view and its decoder factory are created
+     * once and kept for the lifetime of the plugin; later calls only reconfigure and restart the camera.
+     */
+    private void setupCamera(CallbackContext callbackContext) {
+        frameGovernor.watchThermalStatus(cordova.getActivity());
+        final boolean decoderChanged = engine.updateDecoder();
+        warmCamera = false;
+        final boolean restart = camera.close() != CameraLifecycle.State.CLOSED;
+        runOnUiThreadAndWait(new Runnable() {
+            @Override
+            public void run() {
+                if (backend == null) {
+                    // Create our Preview view, it is added to the activity below.
+                    backend = createBackend();
+                } else if (restart) {
+                    backend.pause();
+                }
+                backend.setTargetPixels(previewTargetPixels);
+                currentCameraId = resolveCameraId(currentCameraId);
+                //Configure the decoder
+                if (decoderChanged)
+                    backend.decoderChanged();
 
-                //Configure the camera (front/back)
-                CameraSettings settings = new CameraSettings();
-                settings.setRequestedCameraId(getCurrentCameraId());
-                mBarcodeView.setCameraSettings(settings);
+                //Configure the camera (front/back), applied when the camera is opened by resume()
+                backend.setCameraId(getCurrentCameraId());
 
-                FrameLayout.LayoutParams cameraPreviewParams = new FrameLayout.LayoutParams(FrameLayout.LayoutParams.WRAP_CONTENT, FrameLayout.LayoutParams.WRAP_CONTENT);
-                ((ViewGroup) webView.getView().getParent()).addView(mBarcodeView, cameraPreviewParams);
+                if (backend.getView().getParent() == null) {
+                    FrameLayout.LayoutParams cameraPreviewParams = new FrameLayout.LayoutParams(FrameLayout.LayoutParams.WRAP_CONTENT, FrameLayout.LayoutParams.WRAP_CONTENT);
+                    ((ViewGroup) webView.getView().getParent()).addView(backend.getView(), cameraPreviewParams);
 
-                cameraPreviewing = true;
-                webView.getView().bringToFront();
+                    webView.getView().bringToFront();
+                }
 
-                mBarcodeView.resume();
+                metrics.cameraOpening();
+                backend.resume();
             }
         });
-        prepared = true;
-        previewing = true;
+        camera.transition(CameraLifecycle.State.CLOSED, CameraLifecycle.State.PREVIEWING);
         if(shouldScanAgain)
             scan(callbackContext);
 
     }
 
+    private void setContinuous(boolean continuous) {
+        // A new scan request replaces a running continuous scan, which would otherwise never complete.
+        if (engine.isContinuous() && this.nextScanCallback != null)
+            this.nextScanCallback.error(QRScannerError.SCAN_CANCELED);
+        engine.setContinuous(continuous);
+    }
+
     @Override
-    public void barcodeResult(BarcodeResult barcodeResult) {
+    public void barcodeResult(final BarcodeResult barcodeResult) {
+        enqueue(null, new Runnable() {
+            public void run() {
+                handleResult(barcodeResult);
+            }
+        });
+    }
+
+    private void handleResult(BarcodeResult barcodeResult) {
         if (this.nextScanCallback == null) {
             return;
         }
 
-        if(barcodeResult.getText() != null) {
-            scanning = false;
-            this.nextScanCallback.success("{\"text\":\"" + barcodeResult.getText() + "\",\"type\":\""+barcodeResult.getBarcodeFormat().toString()+"\"}");
-            this.nextScanCallback = null;
-        }
-        else {
-            scan(this.nextScanCallback);
+        switch (engine.onResult(barcodeResult.getResult())) {
+            case DELIVER:
+                // Keep the callback open, the decoder keeps running until cancelScan.
+                metrics.scanCompleted(true);
+                PluginResult result = new PluginResult(PluginResult.Status.OK, engine.encode(barcodeResult.getResult()));
+                result.setKeepCallback(true);
+                this.nextScanCallback.sendPluginResult(result);
+                break;
+            case FINISH:
+                metrics.scanCompleted(false);
+                this.nextScanCallback.success(engine.encode(barcodeResult.getResult()));
+                this.nextScanCallback = null;
+                break;
+            case RESCAN:
+                rearmScan();
+                break;
+            default:
+                break;
         }
     }
 
@@ -616,15 +959,22 @@ public class QRScanner extends CordovaPlugin implements BarcodeCallback {
 
     // ---- BEGIN EXTERNAL API ----
     private void prepare(final CallbackContext callbackContext, final JSONArray args) {
-        if(!prepared) {
+        if(warmCamera && camera.isPrepared() && backend.getCameraId() == currentCameraId) {
+            // Use the camera opened by the warm start (reopened if its grace period is over), the
+            // decoder options are applied by scan
+            warmCamera = false;
+            resumePreview(null);
+            getStatus(callbackContext);
+        }
+        else if(!camera.isPrepared()) {
             if(currentCameraId == Camera.CameraInfo.CAMERA_FACING_BACK) {
                 if (hasCamera()) {
                     if (!hasPermission()) {
-                        requestPermission(33);
+                        requestPermission(33, callbackContext);
                     }
                     else {
-                        setupCamera(callbackContext, args);
-                        if (!scanning)
+                        setupCamera(callbackContext);
+                        if (!engine.isScanning())
                             getStatus(callbackContext);
                     }
                 }
@@ -635,11 +985,11 @@ public class QRScanner extends CordovaPlugin implements BarcodeCallback {
             else if(currentCameraId == Camera.CameraInfo.CAMERA_FACING_FRONT) {
                 if (hasFrontCamera()) {
                     if (!hasPermission()) {
-                        requestPermission(33);
+                        requestPermission(33, callbackContext);
                     }
                     else {
-                        setupCamera(callbackContext, args);
-                        if (!scanning)
+                        setupCamera(callbackContext);
+                        if (!engine.isScanning())
                             getStatus(callbackContext);
                     }
                 }
@@ -652,93 +1002,244 @@ public class QRScanner extends CordovaPlugin implements BarcodeCallback {
             }
         }
         else {
-            prepared = false;
-            this.cordova.getActivity().runOnUiThread(new Runnable() {
-                @Override
-                public void run() {
-                    mBarcodeView.pause();
-                }
-            });
-            if(cameraPreviewing) {
-                this.cordova.getActivity().runOnUiThread(new Runnable() {
-                    @Override
-                    public void run() {
-                        ((ViewGroup) mBarcodeView.getParent()).removeView(mBarcodeView);
-                        cameraPreviewing = false;
-                    }
-                });
-
-                previewing = true;
-                lightOn = false;
-            }
-            setupCamera(callbackContext, args);
+            lightOn = false;
+            setupCamera(callbackContext);
             getStatus(callbackContext);
         }
     }
 
     private void scan(final CallbackContext callbackContext) {
-        scanning = true;
-        if (!prepared) {
+        engine.startScan();
+        if (!camera.isPrepared()) {
             shouldScanAgain = true;
             if (hasCamera()) {
                 if (!hasPermission()) {
-                    requestPermission(33);
+                    requestPermission(33, callbackContext);
                 } else {
-                    setupCamera(callbackContext, new JSONArray());
+                    setupCamera(callbackContext);
                 }
             }
         } else {
-            if(!previewing) {
-                this.cordova.getActivity().runOnUiThread(new Runnable() {
+            if (camera.isStandby()) {
+                wake(false);
+            } else if(camera.transition(CameraLifecycle.State.PAUSED, CameraLifecycle.State.PREVIEWING)) {
+                runOnUiThreadAndWait(new Runnable() {
                     @Override
                     public void run() {
-                        if(mBarcodeView != null) {
-                            mBarcodeView.resume();
-                            previewing = true;
-                            if(switchFlashOn)
-                                lightOn = true;
-                        }
+                        metrics.cameraOpening();
+                        backend.resume();
                     }
                 });
+                if(switchFlashOn)
+                    lightOn = true;
             }
             shouldScanAgain = false;
             this.nextScanCallback = callbackContext;
             final BarcodeCallback b = this;
-            this.cordova.getActivity().runOnUiThread(new Runnable() {
+            final boolean decodeContinuous = engine.isContinuous();
+            final boolean decoderChanged = engine.updateDecoder();
+            runOnUiThreadAndWait(new Runnable() {
                 @Override
                 public void run() {
-                    if (mBarcodeView != null) {
-                        mBarcodeView.decodeSingle(b);
+                    if (backend != null) {
+                        if (decoderChanged)
+                            backend.decoderChanged();
+                        metrics.scanStarted();
+                        backend.decode(decodeContinuous, b);
                     }
                 }
             });
         }
     }
 
+    /**
+     * Decodes again for the running single scan, whose decode ended with a code reported meanwhile
+     * (see ScanEngine.onResult).
+     * Unlike scan, this continues the scan in the metrics rather than starting another one.
+     */
+    private void rearmScan() {
+        // In standby, wake decodes again
+        if (backend == null || !camera.isPrepared() || camera.isStandby())
+            return;
+        final BarcodeCallback b = this;
+        runOnUiThreadAndWait(new Runnable() {
+            @Override
+            public void run() {
+                backend.decode(false, b);
+            }
+        });
+    }
+
     private void cancelScan(final CallbackContext callbackContext) {
-        this.cordova.getActivity().runOnUiThread(new Runnable() {
+        runOnUiThreadAndWait(new Runnable() {
             @Override
             public void run() {
-                scanning = false;
-                if (mBarcodeView != null) {
-                    mBarcodeView.stopDecoding();
+                if (backend != null) {
+                    backend.stopDecoding();
                 }
             }
         });
+        engine.stopScan();
+        metrics.scanCanceled();
         if(this.nextScanCallback != null)
             this.nextScanCallback.error(QRScannerError.SCAN_CANCELED);
         this.nextScanCallback = null;
+        engine.setContinuous(false);
+    }
+
+    private void setScanRegion(final CallbackContext callbackContext, JSONArray args) {
+        try {
+            engine.setRegion(args.opt(0));
+        } catch (IllegalArgumentException e) {
+            Log.w("QRScanner", "Invalid scan region: " + e.getMessage());
+            callbackContext.error(QRScannerError.INVALID_OPTIONS);
+            return;
+        }
+        getStatus(callbackContext);
+    }
+
+    private void getScanRegion(final CallbackContext callbackContext) {
+        try {
+            callbackContext.sendPluginResult(new PluginResult(PluginResult.Status.OK, engine.getRegion()));
+        } catch (JSONException e) {
+            callbackContext.error(QRScannerError.UNEXPECTED_ERROR);
+        }
+    }
+
+    private void getMetrics(final CallbackContext callbackContext) {
+        try {
+            callbackContext.sendPluginResult(new PluginResult(PluginResult.Status.OK, metrics.toJSON()));
+        } catch (JSONException e) {
+            callbackContext.error(QRScannerError.UNEXPECTED_ERROR);
+        }
+    }
+
+    private void getCameraCapabilities(final CallbackContext callbackContext) {
+        try {
+            callbackContext.sendPluginResult(new PluginResult(PluginResult.Status.OK, getCapabilities().toJSON()));
+        } catch (JSONException e) {
+            callbackContext.error(QRScannerError.UNEXPECTED_ERROR);
+        }
+    }
+
+    /**
+     * Resolves the decoder options in order with the other commands, then decodes the image on the
+     * thread pool: decoding a photo takes far longer than any command should block the queue.
+     */
+    private void scanImage(JSONArray args, final CallbackContext callbackContext) {
+        final String image = args.optString(0, null);
+        final DecoderConfig config = imageDecoderConfig(args, callbackContext);
+        if (config == null)
+            return;
+        final ImageDecoder decoder = getImageDecoder();
+        cordova.getThreadPool().execute(new Runnable() {
+            public void run() {
+                try {
+                    Result result = decoder.decode(image, config);
+                    if (result == null)
+                        callbackContext.error(QRScannerError.CODE_NOT_FOUND);
+                    else
+                        callbackContext.success(new ResultEncoder().encode(result, config.resultFields));
+                } catch (ImageDecoder.ImageUnavailableException e) {
+                    Log.w("QRScanner", "Unable to scan image: " + e.getMessage());
+                    callbackContext.error(QRScannerError.IMAGE_UNAVAILABLE);
+                } catch (RuntimeException e) {
+                    Log.e("QRScanner", "Image scan failed", e);
+                    callbackContext.error(QRScannerError.UNEXPECTED_ERROR);
+                }
+            }
+        });
+    }
+
+    /**
+     * Like scanImage for an array of images, decoded in parallel (see BatchImageDecoder). The result
+     * of each image is sent as soon as it is decoded, as {index, result} or {index, error}, through
+     * the kept callback, which is closed by a final {complete: true, images}.
+     */
+    private void scanImages(JSONArray args, final CallbackContext callbackContext) {
+        JSONArray imageArray = args.optJSONArray(0);
+        if (imageArray == null) {
+            callbackContext.error(QRScannerError.INVALID_OPTIONS);
+            return;
+        }
+        final List<String> images = new ArrayList<>(imageArray.length());
+        for (int i = 0; i < imageArray.length(); i++)
+            images.add(imageArray.optString(i, null));
+        final DecoderConfig config = imageDecoderConfig(args, callbackContext);
+        if (config == null)
+            return;
+        if (batchImageDecoder == null)
+            batchImageDecoder = new BatchImageDecoder(getImageDecoder());
+        final BatchImageDecoder decoder = batchImageDecoder;
+        final BatchImageDecoder.Listener listener = new BatchImageDecoder.Listener() {
+            public void onResult(int index, Result result) {
+                sendBatchItem(callbackContext, index, "result", new ResultEncoder().encode(result, config.resultFields));
+            }
+
+            public void onError(int index, int error) {
+                sendBatchItem(callbackContext, index, "error", error);
+            }
+
+            public void onComplete(int count) {
+                JSONObject complete = new JSONObject();
+                try {
+                    complete.put("complete", true);
+                    complete.put("images", count);
+                } catch (JSONException e) {
+                    // Only thrown for null keys
+                }
+                callbackContext.sendPluginResult(new PluginResult(PluginResult.Status.OK, complete));
+            }
+        };
+        cordova.getThreadPool().execute(new Runnable() {
+            public void run() {
+                decoder.decode(images, config, listener, QRScannerError.IMAGE_UNAVAILABLE, QRScannerError.CODE_NOT_FOUND);
+            }
+        });
+    }
+
+    private static void sendBatchItem(CallbackContext callbackContext, int index, String key, Object value) {
+        JSONObject item = new JSONObject();
+        try {
+            item.put("index", index);
+            item.put(key, value);
+        } catch (JSONException e) {
+            // Only thrown for null keys
+        }
+        PluginResult result = new PluginResult(PluginResult.Status.OK, item);
+        result.setKeepCallback(true);
+        callbackContext.sendPluginResult(result);
+    }
+
+    /**
+     * The decoder options passed to scanImage(s), else those of the last prepare/scan.
+     * Null (after sending INVALID_OPTIONS) if the options are invalid.
+     */
+    private DecoderConfig imageDecoderConfig(JSONArray args, CallbackContext callbackContext) {
+        try {
+            return engine.getConfig(args);
+        } catch (IllegalArgumentException e) {
+            Log.w("QRScanner", "Invalid decoder options: " + e.getMessage());
+            callbackContext.error(QRScannerError.INVALID_OPTIONS);
+            return null;
+        }
+    }
+
+    private ImageDecoder getImageDecoder() {
+        if (imageDecoder == null)
+            imageDecoder = new ImageDecoder(cordova.getActivity());
+        return imageDecoder;
     }
 
     private void show(final CallbackContext callbackContext) {
-        this.cordova.getActivity().runOnUiThread(new Runnable() {
+        runOnUiThreadAndWait(new Runnable() {
             @Override
             public void run() {
                 webView.getView().setBackgroundColor(Color.argb(1, 0, 0, 0));
-                showing = true;
-                getStatus(callbackContext);
             }
         });
+        showing = true;
+        getStatus(callbackContext);
     }
 
     private void hide(final CallbackContext callbackContext) {
@@ -747,36 +1248,115 @@ public class QRScanner extends CordovaPlugin implements BarcodeCallback {
     }
 
     private void pausePreview(final CallbackContext callbackContext) {
-        this.cordova.getActivity().runOnUiThread(new Runnable() {
-            @Override
-            public void run() {
-                if(mBarcodeView != null) {
-                    mBarcodeView.pause();
-                    previewing = false;
-                    if(lightOn)
-                        lightOn = false;
+        CameraLifecycle.State from = camera.isStandby() ? CameraLifecycle.State.STANDBY : CameraLifecycle.State.PREVIEWING;
+        if(camera.transition(from, CameraLifecycle.State.PAUSED)) {
+            runOnUiThreadAndWait(new Runnable() {
+                @Override
+                public void run() {
+                    backend.pause();
+                }
+            });
+            if(lightOn)
+                lightOn = false;
+        }
+
+        if (callbackContext != null)
+            getStatus(callbackContext);
+    }
+
+    private void resumePreview(final CallbackContext callbackContext) {
+        if (camera.isStandby()) {
+            wake(true);
+        } else if(camera.transition(CameraLifecycle.State.PAUSED, CameraLifecycle.State.PREVIEWING)) {
+            // Decoding was stopped if the camera was released by a standby
+            final boolean decode = engine.isScanning() && this.nextScanCallback != null;
+            final boolean decodeContinuous = engine.isContinuous();
+            final BarcodeCallback b = this;
+            runOnUiThreadAndWait(new Runnable() {
+                @Override
+                public void run() {
+                    metrics.cameraOpening();
+                    backend.resume();
+                    if (decode)
+                        backend.decode(decodeContinuous, b);
                 }
+            });
+            if(switchFlashOn)
+                lightOn = true;
+        }
+
+        if (callbackContext != null)
+            getStatus(callbackContext);
+    }
 
-                if (callbackContext != null)
-                    getStatus(callbackContext);
+    /**
+     * Stops decoding but keeps the camera open for the grace period (in ms), so that resumePreview
+     * and scan don't have to reopen it and wait for the focus again. With freeze, the preview stops
+     * on its last frame (camera2 backend only). Once the grace period ends the camera is released,
+     * like by pausePreview. A running scan is resumed by resumePreview.
+     */
+    private void standby(final CallbackContext callbackContext, JSONArray args) {
+        JSONObject options = args.optJSONObject(0);
+        final boolean freeze = options != null && options.optBoolean("freeze", false);
+        long gracePeriod = DEFAULT_STANDBY_GRACE_PERIOD;
+        if (options != null && options.has("gracePeriod")) {
+            double value = options.optDouble("gracePeriod", Double.NaN);
+            // Also rejects NaN
+            if (!(value >= 0)) {
+                Log.w("QRScanner", "Invalid standby grace period: " + options.opt("gracePeriod"));
+                callbackContext.error(QRScannerError.INVALID_OPTIONS);
+                return;
             }
-        });
+            gracePeriod = (long) value;
+        }
+        enterStandby(freeze, gracePeriod);
+        getStatus(callbackContext);
+    }
 
+    private void enterStandby(final boolean freeze, long gracePeriod) {
+        if (camera.isStandby() || camera.transition(CameraLifecycle.State.PREVIEWING, CameraLifecycle.State.STANDBY)) {
+            runOnUiThreadAndWait(new Runnable() {
+                @Override
+                public void run() {
+                    backend.stopDecoding();
+                    backend.setFrozen(freeze);
+                }
+            });
+            releaseAfter(gracePeriod);
+        }
     }
 
-    private void resumePreview(final CallbackContext callbackContext) {
-        this.cordova.getActivity().runOnUiThread(new Runnable() {
-            @Override
+    private void releaseAfter(long gracePeriod) {
+        final int generation = ++standbyGeneration;
+        standbyTimer.postDelayed(new Runnable() {
             public void run() {
-                if(mBarcodeView != null) {
-                    mBarcodeView.resume();
-                    previewing = true;
-                    if(switchFlashOn)
-                        lightOn = true;
-                }
+                enqueue(null, new Runnable() {
+                    public void run() {
+                        // Unless woken, or standing by again with a new grace period
+                        if (generation == standbyGeneration && camera.isStandby())
+                            pausePreview(null);
+                    }
+                });
+            }
+        }, gracePeriod);
+    }
 
-                if (callbackContext != null)
-                    getStatus(callbackContext);
+    /**
+     * Leaves standby with the camera still open. With resumeScan, decoding of the running scan starts
+     * again, otherwise the caller starts a scan itself.
+     */
+    private void wake(boolean resumeScan) {
+        if (!camera.transition(CameraLifecycle.State.STANDBY, CameraLifecycle.State.PREVIEWING))
+            return;
+        final boolean decode = resumeScan && engine.isScanning() && this.nextScanCallback != null;
+        final boolean decodeContinuous = engine.isContinuous();
+        final BarcodeCallback b = this;
+        runOnUiThreadAndWait(new Runnable() {
+            @Override
+            public void run() {
+                backend.setFrozen(false);
+                if (decode)
+                    backend.decode(decodeContinuous, b);
             }
         });
     }
@@ -818,10 +1398,10 @@ public class QRScanner extends CordovaPlugin implements BarcodeCallback {
         try {
             denied = false;
             authorized = false;
-            boolean shouldPrepare = prepared;
+            boolean shouldPrepare = camera.isPrepared();
             boolean shouldFlash = lightOn;
             boolean shouldShow = showing;
-            if(prepared)
+            if(shouldPrepare)
                 destroy(callbackContext);
             lightOn = false;
             Intent intent = new Intent();
@@ -843,8 +1423,7 @@ public class QRScanner extends CordovaPlugin implements BarcodeCallback {
 
     }
 
-    private void getStatus(CallbackContext callbackContext) {
-
+    private void refreshAuthorization() {
         if(oneTime) {
             boolean authorizationStatus = hasPermission();
 
@@ -860,6 +1439,13 @@ public class QRScanner extends CordovaPlugin implements BarcodeCallback {
             //No applicable API
             restricted = false;
         }
+    }
+
+    /**
+     * The status fields as bits (see STATUS_FIELDS), with the current camera in the upper half.
+     */
+    private long statusFlags() {
+        refreshAuthorization();
         boolean canOpenSettings = true;
 
         boolean canEnableLight = hasFlash();
@@ -867,56 +1453,105 @@ public class QRScanner extends CordovaPlugin implements BarcodeCallback {
         if(currentCameraId == Camera.CameraInfo.CAMERA_FACING_FRONT)
             canEnableLight = false;
 
-        HashMap status = new HashMap();
-        status.put("authorized",boolToNumberString(authorized));
-        status.put("denied",boolToNumberString(denied));
-        status.put("restricted",boolToNumberString(restricted));
-        status.put("prepared",boolToNumberString(prepared));
-        status.put("scanning",boolToNumberString(scanning));
-        status.put("previewing",boolToNumberString(previewing));
-        status.put("showing",boolToNumberString(showing));
-        status.put("lightEnabled",boolToNumberString(lightOn));
-        status.put("canOpenSettings",boolToNumberString(canOpenSettings));
-        status.put("canEnableLight",boolToNumberString(canEnableLight));
-        status.put("canChangeCamera",boolToNumberString(canChangeCamera()));
-        status.put("currentCamera",Integer.toString(getCurrentCameraId()));
-
-        JSONObject obj = new JSONObject(status);
-        PluginResult result = new PluginResult(PluginResult.Status.OK, obj);
+        boolean[] fields = {authorized, denied, restricted, camera.isPrepared(), engine.isScanning(), camera.isPreviewing(),
+                showing, lightOn, canOpenSettings, canEnableLight, canChangeCamera(), camera.isStandby()};
+        long flags = (long) getCurrentCameraId() << 32;
+        for (int i = 0; i < fields.length; i++) {
+            if (fields[i])
+                flags |= 1L << i;
+        }
+        return flags;
+    }
+
+    private JSONObject statusToJSON(long flags) {
+        JSONObject status = new JSONObject();
+        try {
+            for (int i = 0; i < STATUS_FIELDS.length; i++)
+                status.put(STATUS_FIELDS[i], (flags & (1L << i)) != 0 ? "1" : "0");
+            status.put("currentCamera", Integer.toString((int) (flags >>> 32)));
+            frameGovernor.putRates(status);
+            CaptureBackend preview = backend;
+            Size previewSize = preview != null ? preview.getPreviewSize() : null;
+            if (previewSize != null) {
+                status.put("previewWidth", previewSize.width);
+                status.put("previewHeight", previewSize.height);
+            }
+        } catch (JSONException e) {
+            // Only thrown for null keys
+        }
+        return status;
+    }
+
+    private void getStatus(CallbackContext callbackContext) {
+        PluginResult result = new PluginResult(PluginResult.Status.OK, statusToJSON(statusFlags()));
+        callbackContext.sendPluginResult(result);
+    }
+
+    /**
+     * Keeps the callback and sends it the status now and again whenever it changes.
+     * Replaces (and closes) any earlier watcher.
+     */
+    private void watchStatus(CallbackContext callbackContext) {
+        closeStatusWatcher();
+        statusCallback = callbackContext;
+        pushStatus(true);
+    }
+
+    private void unwatchStatus(CallbackContext callbackContext) {
+        closeStatusWatcher();
+        getStatus(callbackContext);
+    }
+
+    private void closeStatusWatcher() {
+        if (statusCallback == null)
+            return;
+        // NO_RESULT without keepCallback releases the callback without calling it
+        statusCallback.sendPluginResult(new PluginResult(PluginResult.Status.NO_RESULT));
+        statusCallback = null;
+    }
+
+    private void pushStatus(boolean force) {
+        CallbackContext callbackContext = statusCallback;
+        if (callbackContext == null)
+            return;
+        long flags = statusFlags();
+        if (!force && flags == lastPushedStatus)
+            return;
+        lastPushedStatus = flags;
+        PluginResult result = new PluginResult(PluginResult.Status.OK, statusToJSON(flags));
+        result.setKeepCallback(true);
         callbackContext.sendPluginResult(result);
     }
 
     private void destroy(CallbackContext callbackContext) {
-        prepared = false;
         makeOpaque();
-        previewing = false;
-        if(scanning) {
-            this.cordova.getActivity().runOnUiThread(new Runnable() {
+        engine.clearDuplicates();
+        if(engine.isScanning()) {
+            runOnUiThreadAndWait(new Runnable() {
                 @Override
                 public void run() {
-                    scanning = false;
-                    if (mBarcodeView != null) {
-                        mBarcodeView.stopDecoding();
+                    if (backend != null) {
+                        backend.stopDecoding();
                     }
                 }
             });
+            engine.stopScan();
+            metrics.scanCanceled();
             this.nextScanCallback = null;
+            engine.setContinuous(false);
         }
 
-        if(cameraPreviewing) {
-            this.cordova.getActivity().runOnUiThread(new Runnable() {
+        if(lightOn && camera.isPrepared()) {
+            runOnUiThreadAndWait(new Runnable() {
                 @Override
                 public void run() {
-                    ((ViewGroup) mBarcodeView.getParent()).removeView(mBarcodeView);
-                    cameraPreviewing = false;
+                    backend.setTorch(false);
                 }
             });
         }
-        if(currentCameraId != Camera.CameraInfo.CAMERA_FACING_FRONT) {
-            if (lightOn)
-                switchFlash(false, callbackContext);
-        }
-        closeCamera();
+        lightOn = false;
+        closePreview();
+        warmCamera = false;
         currentCameraId = 0;
         getStatus(callbackContext);
     }
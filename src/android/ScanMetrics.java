@@ -0,0 +1,214 @@
+package com.bitpay.cordova.qrscanner;
+
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Counters and latency histograms of the scanner, recorded from the command, UI and decoder
+ * threads without locking. Each value is updated atomically, so a snapshot taken while frames
+ * are being decoded may be off by the frame in flight, never by more.
+ */
+final class ScanMetrics {
+
+    // Upper bounds of the histogram buckets in milliseconds, a last bucket holds anything slower
+    private static final long[] BUCKET_MILLIS = {1, 2, 5, 10, 20, 50, 100, 200, 500, 1000, 2000, 5000, 10000};
+
+    static final class Histogram {
+        private final AtomicLongArray counts = new AtomicLongArray(BUCKET_MILLIS.length + 1);
+        private final AtomicLong count = new AtomicLong();
+        private final AtomicLong totalNanos = new AtomicLong();
+        private final AtomicLong maxNanos = new AtomicLong();
+
+        void record(long nanos) {
+            if (nanos < 0)
+                return;
+            int bucket = 0;
+            while (bucket < BUCKET_MILLIS.length && nanos > BUCKET_MILLIS[bucket] * 1000000L)
+                bucket++;
+            counts.incrementAndGet(bucket);
+            count.incrementAndGet();
+            totalNanos.addAndGet(nanos);
+            long max = maxNanos.get();
+            while (nanos > max && !maxNanos.compareAndSet(max, nanos))
+                max = maxNanos.get();
+        }
+
+        void reset() {
+            for (int i = 0; i < counts.length(); i++)
+                counts.set(i, 0);
+            count.set(0);
+            totalNanos.set(0);
+            maxNanos.set(0);
+        }
+
+        /**
+         * {count, mean, max, buckets, counts}: times in milliseconds, counts has one more entry than
+         * buckets (the upper bounds), for the times above the last bound.
+         */
+        JSONObject toJSON() throws JSONException {
+            long n = count.get();
+            JSONArray buckets = new JSONArray();
+            JSONArray bucketCounts = new JSONArray();
+            for (long bound : BUCKET_MILLIS)
+                buckets.put(bound);
+            for (int i = 0; i < counts.length(); i++)
+                bucketCounts.put(counts.get(i));
+            JSONObject json = new JSONObject();
+            json.put("count", n);
+            json.put("mean", n == 0 ? 0 : totalNanos.get() / 1e6 / n);
+            json.put("max", maxNanos.get() / 1e6);
+            json.put("buckets", buckets);
+            json.put("counts", bucketCounts);
+            return json;
+        }
+    }
+
+    private final Histogram cameraOpen = new Histogram();
+    private final Histogram firstFrame = new Histogram();
+    private final Histogram decodeTime = new Histogram();
+    private final Histogram scanTime = new Histogram();
+    private final Histogram cameraSwitch = new Histogram();
+    private final AtomicLong framesDecoded = new AtomicLong();
+    private final AtomicLong framesDropped = new AtomicLong();
+    private final AtomicLong scans = new AtomicLong();
+    private final AtomicLong results = new AtomicLong();
+    private final AtomicLong switchFramesDropped = new AtomicLong();
+    private final AtomicLong since = new AtomicLong(System.currentTimeMillis());
+
+    // Start times of the pending measurements, 0 when none is pending
+    private final AtomicLong cameraOpening = new AtomicLong();
+    private final AtomicLong frameAwaited = new AtomicLong();
+    private final AtomicLong scanStarted = new AtomicLong();
+    private final AtomicLong cameraSwitching = new AtomicLong();
+    // Average frame interval before the pending switch, in ns
+    private volatile double switchFrameInterval;
+
+    private static long now() {
+        // Never 0, which marks no pending measurement
+        return System.nanoTime() | 1;
+    }
+
+    /**
+     * The camera is being opened (prepare, scan, resumePreview).
+     */
+    void cameraOpening() {
+        long now = now();
+        cameraOpening.set(now);
+        frameAwaited.set(now);
+    }
+
+    /**
+     * The preview has started.
+     */
+    void cameraOpened() {
+        long start = cameraOpening.getAndSet(0);
+        if (start != 0)
+            cameraOpen.record(System.nanoTime() - start);
+    }
+
+    void cameraFailed() {
+        cameraOpening.set(0);
+        frameAwaited.set(0);
+        cameraSwitching.set(0);
+    }
+
+    /**
+     * The camera of a running scan is being replaced (useCamera). The switch lasts until the first
+     * frame of the new camera reaches the decoder, the frames the old camera would have delivered in
+     * the meantime (at its average frame interval, in ns) are counted as dropped by the switch.
+     */
+    void cameraSwitching(double frameIntervalNanos) {
+        switchFrameInterval = frameIntervalNanos;
+        cameraSwitching.set(now());
+    }
+
+    /**
+     * Decoding has started. With the camera already open, the first frame is awaited from now on.
+     */
+    void scanStarted() {
+        long now = now();
+        scans.incrementAndGet();
+        scanStarted.set(now);
+        if (cameraOpening.get() == 0)
+            frameAwaited.set(now);
+    }
+
+    /**
+     * A code was found. In continuous mode, the time to the next code counts from now.
+     */
+    void scanCompleted(boolean continuous) {
+        long now = now();
+        long start = scanStarted.getAndSet(continuous ? now : 0);
+        results.incrementAndGet();
+        if (start != 0)
+            scanTime.record(now - start);
+    }
+
+    void scanCanceled() {
+        scanStarted.set(0);
+        cameraSwitching.set(0);
+    }
+
+    /**
+     * A preview frame reached the decoder, at the System.nanoTime() given.
+     */
+    void frameReceived(long nanos) {
+        long start = frameAwaited.getAndSet(0);
+        if (start != 0)
+            firstFrame.record(nanos - start);
+        long switchStart = cameraSwitching.getAndSet(0);
+        if (switchStart != 0) {
+            long elapsed = nanos - switchStart;
+            cameraSwitch.record(elapsed);
+            double interval = switchFrameInterval;
+            if (interval > 0)
+                switchFramesDropped.addAndGet((long) (elapsed / interval));
+        }
+    }
+
+    void frameDecoded(long decodeNanos) {
+        framesDecoded.incrementAndGet();
+        decodeTime.record(decodeNanos);
+    }
+
+    void frameDropped() {
+        framesDropped.incrementAndGet();
+    }
+
+    /**
+     * Zeroes the counters and histograms. Pending measurements are kept.
+     */
+    void reset() {
+        cameraOpen.reset();
+        firstFrame.reset();
+        decodeTime.reset();
+        scanTime.reset();
+        cameraSwitch.reset();
+        framesDecoded.set(0);
+        framesDropped.set(0);
+        scans.set(0);
+        results.set(0);
+        switchFramesDropped.set(0);
+        since.set(System.currentTimeMillis());
+    }
+
+    JSONObject toJSON() throws JSONException {
+        JSONObject json = new JSONObject();
+        json.put("since", since.get());
+        json.put("cameraOpen", cameraOpen.toJSON());
+        json.put("firstFrame", firstFrame.toJSON());
+        json.put("decodeTime", decodeTime.toJSON());
+        json.put("scanTime", scanTime.toJSON());
+        json.put("cameraSwitch", cameraSwitch.toJSON());
+        json.put("framesDecoded", framesDecoded.get());
+        json.put("framesDropped", framesDropped.get());
+        json.put("scans", scans.get());
+        json.put("results", results.get());
+        json.put("switchFramesDropped", switchFramesDropped.get());
+        return json;
+    }
+}
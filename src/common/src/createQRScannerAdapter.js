@@ -14,7 +14,7 @@ function stringToBool(string) {
 
 // Converts the returned ['string':'string'] dictionary to a status object.
 function convertStatus(statusDictionary) {
-  return {
+  var status = {
     authorized: stringToBool(statusDictionary.authorized),
     denied: stringToBool(statusDictionary.denied),
     restricted: stringToBool(statusDictionary.restricted),
@@ -28,6 +28,17 @@ function convertStatus(statusDictionary) {
     canChangeCamera: stringToBool(statusDictionary.canChangeCamera),
     currentCamera: parseInt(statusDictionary.currentCamera)
   };
+  // Only reported on Android
+  if (typeof statusDictionary.standby !== 'undefined') {
+    status.standby = stringToBool(statusDictionary.standby);
+  }
+  // Decode rates and preview size, only reported on Android
+  ['targetDecodeRate', 'frameRate', 'decodeRate', 'decodeTime', 'thermalStatus', 'previewWidth', 'previewHeight'].forEach(function(name) {
+    if (typeof statusDictionary[name] !== 'undefined') {
+      status[name] = parseFloat(statusDictionary[name]);
+    }
+  });
+  return status;
 }
 
 // Simple utility method to ensure the background is transparent. Used by the
@@ -48,90 +59,124 @@ function clearBackground() {
   }
 }
 
+function createQRScannerError(error) {
+  var errorCode = parseInt(error);
+  var QRScannerError = {};
+  switch (errorCode) {
+    case 0:
+      QRScannerError = {
+        name: 'UNEXPECTED_ERROR',
+        code: 0,
+        _message: 'QRScanner experienced an unexpected error.'
+      };
+      break;
+    case 1:
+      QRScannerError = {
+        name: 'CAMERA_ACCESS_DENIED',
+        code: 1,
+        _message: 'The user denied camera access.'
+      };
+      break;
+    case 2:
+      QRScannerError = {
+        name: 'CAMERA_ACCESS_RESTRICTED',
+        code: 2,
+        _message: 'Camera access is restricted.'
+      };
+      break;
+    case 3:
+      QRScannerError = {
+        name: 'BACK_CAMERA_UNAVAILABLE',
+        code: 3,
+        _message: 'The back camera is unavailable.'
+      };
+      break;
+    case 4:
+      QRScannerError = {
+        name: 'FRONT_CAMERA_UNAVAILABLE',
+        code: 4,
+        _message: 'The front camera is unavailable.'
+      };
+      break;
+    case 5:
+      QRScannerError = {
+        name: 'CAMERA_UNAVAILABLE',
+        code: 5,
+        _message: 'The camera is unavailable.'
+      };
+      break;
+    case 6:
+      QRScannerError = {
+        name: 'SCAN_CANCELED',
+        code: 6,
+        _message: 'Scan was canceled.'
+      };
+      break;
+    case 7:
+      QRScannerError = {
+        name: 'LIGHT_UNAVAILABLE',
+        code: 7,
+        _message: 'The device light is unavailable.'
+      };
+      break;
+    case 8:
+      // Open settings is only available on iOS 8.0+.
+      QRScannerError = {
+        name: 'OPEN_SETTINGS_UNAVAILABLE',
+        code: 8,
+        _message: 'The device is unable to open settings.'
+      };
+      break;
+    case 9:
+      QRScannerError = {
+        name: 'INVALID_OPTIONS',
+        code: 9,
+        _message: 'The scanner options are invalid.'
+      };
+      break;
+    case 10:
+      QRScannerError = {
+        name: 'IMAGE_UNAVAILABLE',
+        code: 10,
+        _message: 'The image could not be read.'
+      };
+      break;
+    case 11:
+      QRScannerError = {
+        name: 'CODE_NOT_FOUND',
+        code: 11,
+        _message: 'No code was found in the image.'
+      };
+      break;
+    default:
+      QRScannerError = {
+        name: 'UNEXPECTED_ERROR',
+        code: 0,
+        _message: 'QRScanner returned an invalid error code.'
+      };
+      break;
+  }
+  return QRScannerError;
+}
+
 function errorCallback(callback) {
   if (!callback) {
     return null;
   }
   return function(error) {
-    var errorCode = parseInt(error);
-    var QRScannerError = {};
-    switch (errorCode) {
-      case 0:
-        QRScannerError = {
-          name: 'UNEXPECTED_ERROR',
-          code: 0,
-          _message: 'QRScanner experienced an unexpected error.'
-        };
-        break;
-      case 1:
-        QRScannerError = {
-          name: 'CAMERA_ACCESS_DENIED',
-          code: 1,
-          _message: 'The user denied camera access.'
-        };
-        break;
-      case 2:
-        QRScannerError = {
-          name: 'CAMERA_ACCESS_RESTRICTED',
-          code: 2,
-          _message: 'Camera access is restricted.'
-        };
-        break;
-      case 3:
-        QRScannerError = {
-          name: 'BACK_CAMERA_UNAVAILABLE',
-          code: 3,
-          _message: 'The back camera is unavailable.'
-        };
-        break;
-      case 4:
-        QRScannerError = {
-          name: 'FRONT_CAMERA_UNAVAILABLE',
-          code: 4,
-          _message: 'The front camera is unavailable.'
-        };
-        break;
-      case 5:
-        QRScannerError = {
-          name: 'CAMERA_UNAVAILABLE',
-          code: 5,
-          _message: 'The camera is unavailable.'
-        };
-        break;
-      case 6:
-        QRScannerError = {
-          name: 'SCAN_CANCELED',
-          code: 6,
-          _message: 'Scan was canceled.'
-        };
-        break;
-      case 7:
-        QRScannerError = {
-          name: 'LIGHT_UNAVAILABLE',
-          code: 7,
-          _message: 'The device light is unavailable.'
-        };
-        break;
-      case 8:
-        // Open settings is only available on iOS 8.0+.
-        QRScannerError = {
-          name: 'OPEN_SETTINGS_UNAVAILABLE',
-          code: 8,
-          _message: 'The device is unable to open settings.'
-        };
-        break;
-      default:
-        QRScannerError = {
-          name: 'UNEXPECTED_ERROR',
-          code: 0,
-          _message: 'QRScanner returned an invalid error code.'
-        };
-        break;
-    }
-    callback(QRScannerError);
+    callback(createQRScannerError(error));
   };
 }
 
+// Options objects are passed to the native side as the only argument, the
+// legacy array form (e.g. ['only-2d']) is passed through unchanged.
+function optionsArgs(options) {
+  if (!options) {
+    return [];
+  }
+  return Array.isArray(options) ? options : [options];
+}
+
 function successCallback(callback) {
   if (!callback) {
     return null;
@@ -154,8 +199,8 @@ function doneCallback(callback, clear) {
 }
 
 return {
-  prepare: function(callback) {
-    cordova.exec(successCallback(callback), errorCallback(callback), 'QRScanner', 'prepare', []);
+  prepare: function(callback, options) {
+    cordova.exec(successCallback(callback), errorCallback(callback), 'QRScanner', 'prepare', optionsArgs(options));
   },
   destroy: function(callback) {
     cordova.exec(doneCallback(callback, true), null, 'QRScanner', 'destroy', []);
@@ -167,7 +212,37 @@ return {
     var success = function(result) {
       callback(null, result);
     };
-    cordova.exec(success, errorCallback(callback), 'QRScanner', 'scan', args);
+    cordova.exec(success, errorCallback(callback), 'QRScanner', 'scan', optionsArgs(args));
+  },
+  scanContinuous: function(callback, args) {
+    if (!callback) {
+      throw new Error('No callback provided to scanContinuous method.');
+    }
+    var success = function(result) {
+      callback(null, result);
+    };
+    cordova.exec(success, errorCallback(callback), 'QRScanner', 'scanContinuous', optionsArgs(args));
+  },
+  scanImage: function(image, callback, options) {
+    if (!callback) {
+      throw new Error('No callback provided to scanImage method.');
+    }
+    var success = function(result) {
+      callback(null, result);
+    };
+    cordova.exec(success, errorCallback(callback), 'QRScanner', 'scanImage', [image].concat(optionsArgs(options)));
+  },
+  scanImages: function(images, callback, options) {
+    if (!callback) {
+      throw new Error('No callback provided to scanImages method.');
+    }
+    var success = function(item) {
+      if (typeof item.error !== 'undefined') {
+        item.error = createQRScannerError(item.error);
+      }
+      callback(null, item);
+    };
+    cordova.exec(success, errorCallback(callback), 'QRScanner', 'scanImages', [images].concat(optionsArgs(options)));
   },
   cancelScan: function(callback) {
     cordova.exec(doneCallback(callback), null, 'QRScanner', 'cancelScan', []);
@@ -181,6 +256,9 @@ return {
   pausePreview: function(callback) {
     cordova.exec(doneCallback(callback), null, 'QRScanner', 'pausePreview', []);
   },
+  standby: function(callback, options) {
+    cordova.exec(successCallback(callback), errorCallback(callback), 'QRScanner', 'standby', optionsArgs(options));
+  },
   resumePreview: function(callback) {
     cordova.exec(doneCallback(callback), null, 'QRScanner', 'resumePreview', []);
   },
@@ -212,6 +290,44 @@ return {
   setZoomLevel: function(callback, zoom) {
 		cordova.exec(successCallback(callback), errorCallback(callback), 'QRScanner', 'setZoomLevel', [zoom || 1]);
   },
+  setScanRegion: function(region, callback) {
+    cordova.exec(successCallback(callback), errorCallback(callback), 'QRScanner', 'setScanRegion', [region || null]);
+  },
+  getScanRegion: function(callback) {
+    if (!callback) {
+      throw new Error('No callback provided to getScanRegion method.');
+    }
+    cordova.exec(callback, null, 'QRScanner', 'getScanRegion', []);
+  },
+  getCameraCapabilities: function(callback) {
+    if (!callback) {
+      throw new Error('No callback provided to getCameraCapabilities method.');
+    }
+    var success = function(capabilities) {
+      callback(null, capabilities);
+    };
+    cordova.exec(success, errorCallback(callback), 'QRScanner', 'getCameraCapabilities', []);
+  },
+  getMetrics: function(callback) {
+    if (!callback) {
+      throw new Error('No callback provided to getMetrics method.');
+    }
+    var success = function(metrics) {
+      callback(null, metrics);
+    };
+    cordova.exec(success, errorCallback(callback), 'QRScanner', 'getMetrics', []);
+  },
+  resetMetrics: function(callback) {
+    if (callback) {
+      // Nothing is returned, only completion
+      var success = function() {
+        callback(null);
+      };
+      cordova.exec(success, errorCallback(callback), 'QRScanner', 'resetMetrics', []);
+    } else {
+      cordova.exec(null, null, 'QRScanner', 'resetMetrics', []);
+    }
+  },
   openSettings: function(callback) {
     if (callback) {
       cordova.exec(successCallback(callback), errorCallback(callback), 'QRScanner', 'openSettings', []);
@@ -224,6 +340,15 @@ return {
       throw new Error('No callback provided to getStatus method.');
     }
     cordova.exec(doneCallback(callback), null, 'QRScanner', 'getStatus', []);
+  },
+  watchStatus: function(callback) {
+    if (!callback) {
+      throw new Error('No callback provided to watchStatus method.');
+    }
+    cordova.exec(doneCallback(callback), null, 'QRScanner', 'watchStatus', []);
+  },
+  unwatchStatus: function(callback) {
+    cordova.exec(doneCallback(callback), null, 'QRScanner', 'unwatchStatus', []);
   }
 };
 };
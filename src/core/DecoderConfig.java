@@ -0,0 +1,321 @@
+package com.bitpay.cordova.qrscanner;
+
+import com.google.zxing.BarcodeFormat;
+import com.google.zxing.DecodeHintType;
+import com.google.zxing.LuminanceSource;
+import com.google.zxing.Result;
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.nio.charset.Charset;
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.EnumSet;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Immutable decoder configuration, selected by the options object passed to
+ * prepare/scan (or the legacy "only-2d" argument).
+ *
+ * Every enabled format and every extra pass costs CPU on each preview frame,
+ * so the configuration should be as narrow as the app allows.
+ */
+final class DecoderConfig {
+
+    static final Set<BarcodeFormat> ALL_FORMATS = Collections.unmodifiableSet(EnumSet.of(
+            BarcodeFormat.CODABAR,
+            BarcodeFormat.CODE_128,
+            BarcodeFormat.CODE_39,
+            BarcodeFormat.CODE_93,
+            BarcodeFormat.DATA_MATRIX,
+            BarcodeFormat.EAN_13,
+            BarcodeFormat.EAN_8,
+            BarcodeFormat.QR_CODE,
+            BarcodeFormat.RSS_14,
+            BarcodeFormat.RSS_EXPANDED,
+            BarcodeFormat.UPC_A,
+            BarcodeFormat.UPC_E,
+            BarcodeFormat.UPC_EAN_EXTENSION));
+
+    static final Set<BarcodeFormat> ONLY_2D_FORMATS = Collections.unmodifiableSet(EnumSet.of(
+            BarcodeFormat.DATA_MATRIX,
+            BarcodeFormat.QR_CODE));
+
+    static final DecoderConfig DEFAULT = new DecoderConfig(ALL_FORMATS, true, false, false, null, false, false, false, false, false, ALL_FORMATS, 0,
+            ResultEncoder.DEFAULT_FIELDS);
+    static final DecoderConfig ONLY_2D = new DecoderConfig(ONLY_2D_FORMATS, true, false, false, null, false, false, false, false, false, ONLY_2D_FORMATS, 0,
+            ResultEncoder.DEFAULT_FIELDS);
+
+    private static final String ONLY_2D_ARGUMENT = "only-2d";
+    private static final String DECODE_MODE_SINGLE = "single";
+    private static final String DECODE_MODE_ADAPTIVE = "adaptive";
+    private static final String DECODE_MODE_MULTIPLE = "multiple";
+    private static final String DECODE_MODE_RACING = "racing";
+    private static final int DEFAULT_ESCALATE_AFTER = 5;
+    private static final int MAX_CACHED_CONFIGS = 16;
+
+    // Parsed configurations, keyed on the raw options, so repeated prepare/scan calls skip validation
+    // and keep handing the same FrameDecoderFactory to the preview.
+    private static final Map<String, DecoderConfig> cache = new LinkedHashMap<String, DecoderConfig>(MAX_CACHED_CONFIGS, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, DecoderConfig> eldest) {
+            return size() > MAX_CACHED_CONFIGS;
+        }
+    };
+
+    final Set<BarcodeFormat> formats;
+    final boolean tryHarder;
+    final boolean alsoInverted;
+    final boolean pureBarcode;
+    final String characterSet;
+    // Code 128 read as GS1-128 (]C1 and group separators), for the 'gs1' accept check
+    final boolean assumeGs1;
+    // Escalation ladder, see EscalatingDecoderFactory
+    final boolean adaptive;
+    final Set<BarcodeFormat> preferredFormats;
+    final int escalateAfter;
+    // All codes of each frame, see MultiDecoderFactory
+    final boolean multiple;
+    // Decoder variants racing on each frame, see RacingDecoderFactory
+    final boolean racing;
+    final boolean alsoRotated;
+    // Fields of the results sent to the scan callbacks
+    final Set<ResultEncoder.Field> resultFields;
+
+    private FrameDecoderFactory decoderFactory;
+
+    private DecoderConfig(Set<BarcodeFormat> formats, boolean tryHarder, boolean alsoInverted, boolean pureBarcode, String characterSet,
+                          boolean assumeGs1, boolean adaptive, boolean multiple, boolean racing, boolean alsoRotated,
+                          Set<BarcodeFormat> preferredFormats, int escalateAfter,
+                          Set<ResultEncoder.Field> resultFields) {
+        this.formats = formats;
+        this.tryHarder = tryHarder;
+        this.alsoInverted = alsoInverted;
+        this.pureBarcode = pureBarcode;
+        this.characterSet = characterSet;
+        this.assumeGs1 = assumeGs1;
+        this.adaptive = adaptive;
+        this.multiple = multiple;
+        this.racing = racing;
+        this.alsoRotated = alsoRotated;
+        this.preferredFormats = preferredFormats;
+        this.escalateAfter = escalateAfter;
+        this.resultFields = resultFields;
+    }
+
+    /**
+     * Returns the configuration described by the action arguments, or null if
+     * they contain neither an options object nor "only-2d".
+     *
+     * @throws IllegalArgumentException if the options are invalid
+     */
+    static DecoderConfig fromArgs(JSONArray args) {
+        boolean only2d = false;
+        JSONObject options = null;
+        for (int i = 0; i < args.length(); i++) {
+            Object arg = args.opt(i);
+            if (ONLY_2D_ARGUMENT.equals(arg))
+                only2d = true;
+            else if (arg instanceof JSONObject)
+                options = (JSONObject) arg;
+        }
+        if (options == null)
+            return only2d ? ONLY_2D : null;
+
+        String key = only2d + options.toString();
+        synchronized (cache) {
+            DecoderConfig config = cache.get(key);
+            if (config == null) {
+                config = fromOptions(options, only2d ? ONLY_2D : DEFAULT);
+                cache.put(key, config);
+            }
+            return config;
+        }
+    }
+
+    private static DecoderConfig fromOptions(JSONObject options, DecoderConfig base) {
+        Set<BarcodeFormat> formats = base.formats;
+        JSONArray formatNames = options.optJSONArray("formats");
+        if (formatNames != null) {
+            formats = parseFormats(formatNames);
+        } else if (options.has("formats")) {
+            throw new IllegalArgumentException("formats must be an array");
+        }
+
+        String characterSet = options.optString("characterSet", null);
+        if (characterSet != null && !isSupportedCharset(characterSet))
+            throw new IllegalArgumentException("Unsupported characterSet: " + characterSet);
+
+        String decodeMode = options.optString("decodeMode", DECODE_MODE_SINGLE);
+        if (!DECODE_MODE_SINGLE.equals(decodeMode) && !DECODE_MODE_ADAPTIVE.equals(decodeMode)
+                && !DECODE_MODE_MULTIPLE.equals(decodeMode) && !DECODE_MODE_RACING.equals(decodeMode))
+            throw new IllegalArgumentException("Unknown decodeMode: " + decodeMode);
+        boolean adaptive = DECODE_MODE_ADAPTIVE.equals(decodeMode);
+        boolean multiple = DECODE_MODE_MULTIPLE.equals(decodeMode);
+        boolean racing = DECODE_MODE_RACING.equals(decodeMode);
+
+        Set<BarcodeFormat> preferredFormats = formats;
+        JSONArray preferredFormatNames = options.optJSONArray("preferredFormats");
+        if (preferredFormatNames != null) {
+            preferredFormats = parseFormats(preferredFormatNames);
+        } else if (formats.contains(BarcodeFormat.QR_CODE)) {
+            preferredFormats = Collections.unmodifiableSet(EnumSet.of(BarcodeFormat.QR_CODE));
+        }
+
+        int escalateAfter = DEFAULT_ESCALATE_AFTER;
+        if (options.has("escalateAfter")) {
+            escalateAfter = options.optInt("escalateAfter", 0);
+            if (escalateAfter < 1)
+                throw new IllegalArgumentException("escalateAfter must be a number, at least 1");
+        }
+
+        Set<ResultEncoder.Field> resultFields = base.resultFields;
+        JSONArray resultFieldNames = options.optJSONArray("resultFields");
+        if (resultFieldNames != null) {
+            resultFields = ResultEncoder.parseFields(resultFieldNames);
+        } else if (options.has("resultFields")) {
+            throw new IllegalArgumentException("resultFields must be an array");
+        }
+
+        return new DecoderConfig(formats,
+                optBoolean(options, "tryHarder", base.tryHarder),
+                optBoolean(options, "alsoInverted", base.alsoInverted),
+                optBoolean(options, "pureBarcode", base.pureBarcode),
+                characterSet,
+                isGs1Check(options.opt("accept")),
+                adaptive,
+                multiple,
+                racing,
+                optBoolean(options, "alsoRotated", base.alsoRotated),
+                preferredFormats,
+                escalateAfter,
+                resultFields);
+    }
+
+    // The accept option is checked by ResultFilter
+    private static boolean isGs1Check(Object accept) {
+        return accept instanceof JSONObject && "gs1".equalsIgnoreCase(((JSONObject) accept).optString("check"));
+    }
+
+    static Set<BarcodeFormat> parseFormats(JSONArray formatNames) {
+        if (formatNames.length() == 0)
+            throw new IllegalArgumentException("formats must not be empty");
+        EnumSet<BarcodeFormat> formats = EnumSet.noneOf(BarcodeFormat.class);
+        for (int i = 0; i < formatNames.length(); i++) {
+            String name = formatNames.optString(i, "").toUpperCase().replace('-', '_');
+            try {
+                formats.add(BarcodeFormat.valueOf(name));
+            } catch (IllegalArgumentException e) {
+                throw new IllegalArgumentException("Unknown barcode format: " + formatNames.opt(i), e);
+            }
+        }
+        return Collections.unmodifiableSet(formats);
+    }
+
+    private static boolean isSupportedCharset(String name) {
+        try {
+            return Charset.isSupported(name);
+        } catch (IllegalArgumentException e) {
+            return false;
+        }
+    }
+
+    private static boolean optBoolean(JSONObject options, String name, boolean fallback) {
+        if (!options.has(name))
+            return fallback;
+        try {
+            return options.getBoolean(name);
+        } catch (JSONException e) {
+            throw new IllegalArgumentException(name + " must be a boolean", e);
+        }
+    }
+
+    Map<DecodeHintType, Object> getHints() {
+        Map<DecodeHintType, Object> hints = new EnumMap<>(DecodeHintType.class);
+        if (tryHarder)
+            hints.put(DecodeHintType.TRY_HARDER, Boolean.TRUE);
+        if (pureBarcode)
+            hints.put(DecodeHintType.PURE_BARCODE, Boolean.TRUE);
+        if (assumeGs1)
+            hints.put(DecodeHintType.ASSUME_GS1, Boolean.TRUE);
+        return hints;
+    }
+
+    /**
+     * Hints for a reader of its own: getHints with the formats and the character set.
+     */
+    Map<DecodeHintType, Object> getReaderHints() {
+        return getReaderHints(formats, getHints());
+    }
+
+    Map<DecodeHintType, Object> getReaderHints(Set<BarcodeFormat> formats, Map<DecodeHintType, Object> hints) {
+        Map<DecodeHintType, Object> readerHints = new EnumMap<>(hints);
+        readerHints.put(DecodeHintType.POSSIBLE_FORMATS, formats);
+        if (characterSet != null)
+            readerHints.put(DecodeHintType.CHARACTER_SET, characterSet);
+        return readerHints;
+    }
+
+    synchronized FrameDecoderFactory getDecoderFactory() {
+        if (decoderFactory == null && adaptive) {
+            decoderFactory = new EscalatingDecoderFactory(this);
+        } else if (decoderFactory == null && multiple) {
+            decoderFactory = new MultiDecoderFactory(this);
+        } else if (decoderFactory == null && racing) {
+            decoderFactory = new RacingDecoderFactory(this);
+        } else if (decoderFactory == null) {
+            final FrameDecoderFactory formatsFactory = FormatDecoder.factory(getReaderHints());
+            if (alsoInverted) {
+                decoderFactory = new FrameDecoderFactory() {
+                    @Override
+                    public FrameDecoder createDecoder() {
+                        return new InvertingDecoder(formatsFactory.createDecoder());
+                    }
+                };
+            } else {
+                decoderFactory = formatsFactory;
+            }
+        }
+        return decoderFactory;
+    }
+
+    /**
+     * A decoder for still images, with the formats and hints of the config. A still image gets a
+     * single chance, so the adaptive decode mode goes straight to its full pass (TRY_HARDER,
+     * inverted). In the multiple decode mode, all codes of the image are found.
+     */
+    FrameDecoder createImageDecoder() {
+        if (multiple)
+            return getDecoderFactory().createDecoder();
+        Map<DecodeHintType, Object> hints = getHints();
+        if (adaptive)
+            hints.put(DecodeHintType.TRY_HARDER, Boolean.TRUE);
+        FrameDecoder decoder = new FormatDecoder(getReaderHints(formats, hints));
+        if (alsoInverted || adaptive)
+            decoder = new InvertingDecoder(decoder);
+        return decoder;
+    }
+
+    /**
+     * Retries frames without a result with inverted luminance (light codes on a dark background).
+     * The bundled ZXing core predates DecodeHintType.ALSO_INVERTED, so the second pass is done here.
+     */
+    static class InvertingDecoder implements FrameDecoder {
+        private final FrameDecoder decoder;
+
+        InvertingDecoder(FrameDecoder decoder) {
+            this.decoder = decoder;
+        }
+
+        @Override
+        public Result decode(LuminanceSource source) {
+            Result result = decoder.decode(source);
+            if (result == null)
+                result = decoder.decode(source.invert());
+            return result;
+        }
+    }
+}
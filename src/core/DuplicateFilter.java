@@ -0,0 +1,138 @@
+package com.bitpay.cordova.qrscanner;
+
+import com.google.zxing.Result;
+import com.google.zxing.ResultMetadataType;
+import org.json.JSONObject;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Remembers the codes reported recently, so that a code which stays in view isn't reported again
+ * by the next scan. A code counts as a duplicate until it has been out of sight for the TTL: each
+ * sighting of a reported code restarts its TTL. Codes are only remembered once reported, a code
+ * decoded while no scan takes it is reported by the next one.
+ *
+ * Codes are kept by a 64 bit hash of their format and text, not the text itself, in an LRU map
+ * of bounded capacity: when a code has to make room for others, it is reported again.
+ */
+final class DuplicateFilter {
+
+    static final int DEFAULT_CAPACITY = 64;
+
+    private final LinkedHashMap<Long, Long> lastSeen = new LinkedHashMap<Long, Long>(16, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<Long, Long> eldest) {
+            return size() > capacity;
+        }
+    };
+    // 0 reports every code
+    private long ttlNanos;
+    private int capacity = DEFAULT_CAPACITY;
+
+    /**
+     * Applies the duplicateTtl (milliseconds, 0 turns the filter off) and duplicateCapacity options,
+     * if present. Nothing is applied if one is invalid.
+     *
+     * @throws IllegalArgumentException if an option is out of range
+     */
+    synchronized void configure(JSONObject options) {
+        long ttl = parseTtlNanos(options, ttlNanos);
+        int capacity = parseCapacity(options, this.capacity);
+        this.ttlNanos = ttl;
+        this.capacity = capacity;
+        if (ttl == 0)
+            lastSeen.clear();
+        while (lastSeen.size() > capacity)
+            lastSeen.remove(lastSeen.keySet().iterator().next());
+    }
+
+    /**
+     * Checks the options of configure without applying them.
+     *
+     * @throws IllegalArgumentException if an option is out of range
+     */
+    static void validate(JSONObject options) {
+        parseTtlNanos(options, 0);
+        parseCapacity(options, DEFAULT_CAPACITY);
+    }
+
+    private static long parseTtlNanos(JSONObject options, long fallback) {
+        if (!options.has("duplicateTtl"))
+            return fallback;
+        double millis = options.optDouble("duplicateTtl", -1);
+        if (!(millis >= 0))
+            throw new IllegalArgumentException("duplicateTtl must be a positive number of milliseconds, or 0");
+        return (long) (millis * 1e6);
+    }
+
+    private static int parseCapacity(JSONObject options, int fallback) {
+        if (!options.has("duplicateCapacity"))
+            return fallback;
+        int capacity = options.optInt("duplicateCapacity", 0);
+        if (capacity < 1)
+            throw new IllegalArgumentException("duplicateCapacity must be at least 1");
+        return capacity;
+    }
+
+    /**
+     * Tells whether all of the result's codes (all codes of the frame in the 'multiple' decode
+     * mode) were reported within the TTL, restarting the TTL of those which were. Called for each
+     * frame, on the decoder threads.
+     */
+    synchronized boolean isDuplicate(Result result) {
+        if (ttlNanos == 0)
+            return false;
+        long now = System.nanoTime();
+        boolean duplicate = true;
+        for (Result code : codes(result)) {
+            Long previous = lastSeen.get(key(code));
+            if (previous != null && now - previous < ttlNanos)
+                lastSeen.put(key(code), now);
+            else
+                duplicate = false;
+        }
+        return duplicate;
+    }
+
+    /**
+     * Records the result's codes as reported, and tells whether all of them already were within
+     * the TTL (reported since the decoder checked them).
+     */
+    synchronized boolean report(Result result) {
+        if (ttlNanos == 0)
+            return false;
+        long now = System.nanoTime();
+        boolean duplicate = true;
+        for (Result code : codes(result))
+            duplicate &= seen(code, now);
+        return duplicate;
+    }
+
+    synchronized void clear() {
+        lastSeen.clear();
+    }
+
+    private static Result[] codes(Result result) {
+        Object info = result.getResultMetadata() != null ? result.getResultMetadata().get(ResultMetadataType.OTHER) : null;
+        Result[] codes = info instanceof ResultEncoder.DecodeInfo ? ((ResultEncoder.DecodeInfo) info).codes : null;
+        return codes != null ? codes : new Result[]{result};
+    }
+
+    private boolean seen(Result code, long now) {
+        Long previous = lastSeen.put(key(code), now);
+        return previous != null && now - previous < ttlNanos;
+    }
+
+    // FNV-1a of the text, mixed with the format
+    private static long key(Result code) {
+        long hash = 0xcbf29ce484222325L;
+        String text = code.getText();
+        for (int i = 0; i < text.length(); i++) {
+            hash ^= text.charAt(i);
+            hash *= 0x100000001b3L;
+        }
+        hash ^= code.getBarcodeFormat().ordinal();
+        return hash * 0x100000001b3L;
+    }
+}
@@ -0,0 +1,81 @@
+package com.bitpay.cordova.qrscanner;
+
+import com.google.zxing.DecodeHintType;
+import com.google.zxing.LuminanceSource;
+import com.google.zxing.Result;
+import com.google.zxing.ResultMetadataType;
+
+import java.util.Map;
+
+/**
+ * Decodes with a cheap pass first (preferred formats, no TRY_HARDER) and only
+ * escalates to the full pass (all formats, TRY_HARDER, inverted) after a number
+ * of consecutive frames without a result. A hit drops back to the cheap pass.
+ *
+ * The rung which produced a result is stored as {@link ResultMetadataType#OTHER}.
+ */
+class EscalatingDecoderFactory implements FrameDecoderFactory {
+
+    enum Rung {
+        FAST, HARD;
+
+        @Override
+        public String toString() {
+            return name().toLowerCase();
+        }
+    }
+
+    private final Map<DecodeHintType, Object> fastHints;
+    private final Map<DecodeHintType, Object> hardHints;
+    private final int escalateAfter;
+
+    EscalatingDecoderFactory(DecoderConfig config) {
+        Map<DecodeHintType, Object> fastHints = config.getHints();
+        fastHints.remove(DecodeHintType.TRY_HARDER);
+        Map<DecodeHintType, Object> hardHints = config.getHints();
+        hardHints.put(DecodeHintType.TRY_HARDER, Boolean.TRUE);
+
+        this.fastHints = config.getReaderHints(config.preferredFormats, fastHints);
+        this.hardHints = config.getReaderHints(config.formats, hardHints);
+        this.escalateAfter = config.escalateAfter;
+    }
+
+    @Override
+    public FrameDecoder createDecoder() {
+        return new EscalatingDecoder(new FormatDecoder(fastHints),
+                new DecoderConfig.InvertingDecoder(new FormatDecoder(hardHints)), escalateAfter);
+    }
+
+    /**
+     * Only used from the decoder thread, so the ladder state needs no synchronization.
+     */
+    private static class EscalatingDecoder implements FrameDecoder {
+        private final FrameDecoder fast;
+        private final FrameDecoder hard;
+        private final int escalateAfter;
+        private int misses;
+        private FrameDecoder current;
+
+        EscalatingDecoder(FrameDecoder fast, FrameDecoder hard, int escalateAfter) {
+            this.fast = fast;
+            this.hard = hard;
+            this.escalateAfter = escalateAfter;
+            this.current = fast;
+        }
+
+        @Override
+        public Result decode(LuminanceSource source) {
+            Rung rung = current == fast ? Rung.FAST : Rung.HARD;
+            Result result = current.decode(source);
+            if (result == null) {
+                if (current == fast && ++misses >= escalateAfter)
+                    current = hard;
+                return null;
+            }
+            misses = 0;
+            current = fast;
+            result.putMetadata(ResultMetadataType.OTHER, rung);
+            return result;
+        }
+    }
+}
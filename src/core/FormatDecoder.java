@@ -0,0 +1,49 @@
+package com.bitpay.cordova.qrscanner;
+
+import com.google.zxing.BinaryBitmap;
+import com.google.zxing.DecodeHintType;
+import com.google.zxing.LuminanceSource;
+import com.google.zxing.MultiFormatReader;
+import com.google.zxing.ReaderException;
+import com.google.zxing.Result;
+
+import java.util.Map;
+
+/**
+ * Decodes a frame with a MultiFormatReader, set up once with the formats and hints, after
+ * binarizing it with the HybridBinarizer (as the BarcodeView's own decoder does), in buffers
+ * reused from frame to frame (see PooledBinarizer).
+ */
+class FormatDecoder implements FrameDecoder {
+
+    private final MultiFormatReader reader = new MultiFormatReader();
+    private final PooledBinarizer.Buffers buffers = new PooledBinarizer.Buffers();
+
+    FormatDecoder(Map<DecodeHintType, ?> hints) {
+        reader.setHints(hints);
+    }
+
+    static FrameDecoderFactory factory(final Map<DecodeHintType, ?> hints) {
+        return new FrameDecoderFactory() {
+            @Override
+            public FrameDecoder createDecoder() {
+                return new FormatDecoder(hints);
+            }
+        };
+    }
+
+    protected BinaryBitmap toBitmap(LuminanceSource source) {
+        return new BinaryBitmap(new PooledBinarizer(source, buffers));
+    }
+
+    @Override
+    public Result decode(LuminanceSource frame) {
+        try {
+            return reader.decodeWithState(toBitmap(frame));
+        } catch (ReaderException e) {
+            return null;
+        } finally {
+            reader.reset();
+        }
+    }
+}
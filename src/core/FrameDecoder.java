@@ -0,0 +1,16 @@
+package com.bitpay.cordova.qrscanner;
+
+import com.google.zxing.LuminanceSource;
+import com.google.zxing.Result;
+
+/**
+ * Decodes frames, one at a time: decoders keep state between frames (readers set up once,
+ * escalation) and are used from a single thread.
+ */
+public interface FrameDecoder {
+
+    /**
+     * @return the code found in the frame, or null if there is none
+     */
+    Result decode(LuminanceSource frame);
+}
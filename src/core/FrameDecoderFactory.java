@@ -0,0 +1,9 @@
+package com.bitpay.cordova.qrscanner;
+
+/**
+ * Creates a decoder for each thread which decodes frames, e.g. each time the preview starts decoding.
+ */
+interface FrameDecoderFactory {
+
+    FrameDecoder createDecoder();
+}
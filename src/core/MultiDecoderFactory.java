@@ -0,0 +1,122 @@
+package com.bitpay.cordova.qrscanner;
+
+import com.google.zxing.BarcodeFormat;
+import com.google.zxing.BinaryBitmap;
+import com.google.zxing.DecodeHintType;
+import com.google.zxing.LuminanceSource;
+import com.google.zxing.MultiFormatReader;
+import com.google.zxing.NotFoundException;
+import com.google.zxing.Reader;
+import com.google.zxing.Result;
+import com.google.zxing.ResultMetadataType;
+import com.google.zxing.multi.GenericMultipleBarcodeReader;
+import com.google.zxing.multi.MultipleBarcodeReader;
+import com.google.zxing.multi.qrcode.QRCodeMultiReader;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.EnumSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Decodes all codes in a frame at once. QR codes are found by QRCodeMultiReader from their
+ * finder patterns, other formats by GenericMultipleBarcodeReader, which repeatedly decodes the
+ * parts of the frame around the codes found so far. (The latter can't be used for QR codes:
+ * with several in the frame, the single code detector mixes up their finder patterns and
+ * finds none to start from.)
+ *
+ * The first code is returned as the result, all of them as the codes of a
+ * {@link ResultEncoder.DecodeInfo} stored as {@link ResultMetadataType#OTHER}.
+ */
+class MultiDecoderFactory implements FrameDecoderFactory {
+
+    private final DecoderConfig config;
+
+    MultiDecoderFactory(DecoderConfig config) {
+        this.config = config;
+    }
+
+    @Override
+    public FrameDecoder createDecoder() {
+        Map<DecodeHintType, Object> hints = config.getReaderHints();
+        hints.remove(DecodeHintType.POSSIBLE_FORMATS);
+
+        List<MultipleBarcodeReader> readers = new ArrayList<>(2);
+        if (config.formats.contains(BarcodeFormat.QR_CODE))
+            readers.add(new QRCodeMultiReader());
+        Set<BarcodeFormat> otherFormats = EnumSet.copyOf(config.formats);
+        otherFormats.remove(BarcodeFormat.QR_CODE);
+        if (!otherFormats.isEmpty()) {
+            Map<DecodeHintType, Object> otherHints = new EnumMap<>(hints);
+            otherHints.put(DecodeHintType.POSSIBLE_FORMATS, otherFormats);
+            MultiFormatReader reader = new MultiFormatReader();
+            reader.setHints(otherHints);
+            readers.add(new GenericMultipleBarcodeReader(new StatefulReader(reader)));
+        }
+        return new MultiDecoder(readers, hints);
+    }
+
+    /**
+     * Decodes with the readers set up once by setHints, instead of MultiFormatReader.decode
+     * setting them up again for each of the many decodes of a frame.
+     */
+    private static final class StatefulReader implements Reader {
+        private final MultiFormatReader reader;
+
+        StatefulReader(MultiFormatReader reader) {
+            this.reader = reader;
+        }
+
+        @Override
+        public Result decode(BinaryBitmap image) throws NotFoundException {
+            return reader.decodeWithState(image);
+        }
+
+        @Override
+        public Result decode(BinaryBitmap image, Map<DecodeHintType, ?> hints) throws NotFoundException {
+            return reader.decodeWithState(image);
+        }
+
+        @Override
+        public void reset() {
+            reader.reset();
+        }
+    }
+
+    private static class MultiDecoder implements FrameDecoder {
+        private final List<MultipleBarcodeReader> readers;
+        private final Map<DecodeHintType, ?> hints;
+        private final PooledBinarizer.Buffers buffers = new PooledBinarizer.Buffers();
+
+        MultiDecoder(List<MultipleBarcodeReader> readers, Map<DecodeHintType, ?> hints) {
+            this.readers = readers;
+            this.hints = hints;
+        }
+
+        @Override
+        public Result decode(LuminanceSource source) {
+            long start = System.nanoTime();
+            BinaryBitmap bitmap = new BinaryBitmap(new PooledBinarizer(source, buffers));
+            List<Result> found = new ArrayList<>();
+            for (MultipleBarcodeReader reader : readers) {
+                try {
+                    Collections.addAll(found, reader.decodeMultiple(bitmap, hints));
+                } catch (NotFoundException e) {
+                    // None of these formats
+                }
+            }
+            if (found.isEmpty())
+                return null;
+            Result[] codes = found.toArray(new Result[found.size()]);
+            // A copy, so that the first code doesn't end up among its own codes
+            Result result = new Result(codes[0].getText(), codes[0].getRawBytes(), codes[0].getNumBits(),
+                    codes[0].getResultPoints(), codes[0].getBarcodeFormat(), codes[0].getTimestamp());
+            result.putAllMetadata(codes[0].getResultMetadata());
+            result.putMetadata(ResultMetadataType.OTHER, new ResultEncoder.DecodeInfo(null, System.nanoTime() - start, codes));
+            return result;
+        }
+    }
+}
@@ -0,0 +1,209 @@
+package com.bitpay.cordova.qrscanner;
+
+import com.google.zxing.LuminanceSource;
+import com.google.zxing.PlanarYUVLuminanceSource;
+
+import java.nio.ByteBuffer;
+
+/**
+ * The luminance plane of a camera frame (the Y plane of a YUV image), read in place from its
+ * buffer: rows are copied only when the decoder asks for them, and the frame is turned to display
+ * orientation while they are, so the decoder and the scan region see the frame upright, as with
+ * the legacy preview. Crops are views of the same buffer. Like the legacy preview frames, the
+ * source can't be rotated, so 1D readers don't spend time looking for vertical codes.
+ *
+ * The buffer belongs to the camera and is only valid until the decoder returns: decoders which
+ * keep reading the frame after that (see RacingDecoderFactory) have to take a {@link #copy}.
+ *
+ * A source can be moved on to the next frame of the same geometry with {@link #wrap}, so the
+ * scan loop doesn't allocate one per frame; the crop to the scan region is kept as well. A
+ * source (and its crops) is read by one thread at a time.
+ */
+public final class PlaneLuminanceSource extends LuminanceSource {
+
+    private ByteBuffer plane;
+    // A view of the plane whose position is moved for bulk reads
+    private ByteBuffer reader;
+    private final int rowStride;
+    private final int pixelStride;
+    // The window of the plane this source covers, in the orientation of the buffer
+    private final int dataLeft;
+    private final int dataTop;
+    private final int dataWidth;
+    private final int dataHeight;
+    // Clockwise rotation (0, 90, 180 or 270) turning the window upright
+    private final int rotation;
+    // A row of the window as it lies in the plane, for rotated frames
+    private byte[] dataRow;
+    // The last crop, handed out again for the same rectangle
+    private PlaneLuminanceSource crop;
+
+    /**
+     * @param rotation clockwise rotation in degrees turning the frame to display orientation
+     */
+    public PlaneLuminanceSource(ByteBuffer plane, int rowStride, int pixelStride, int width, int height, int rotation) {
+        this(plane, rowStride, pixelStride, 0, 0, width, height, rotation);
+    }
+
+    private PlaneLuminanceSource(ByteBuffer plane, int rowStride, int pixelStride,
+                                 int dataLeft, int dataTop, int dataWidth, int dataHeight, int rotation) {
+        super(rotation % 180 == 0 ? dataWidth : dataHeight, rotation % 180 == 0 ? dataHeight : dataWidth);
+        if (rotation < 0 || rotation % 90 != 0)
+            throw new IllegalArgumentException("rotation must be 0, 90, 180 or 270 degrees");
+        if (dataLeft < 0 || dataTop < 0 || dataWidth < 1 || dataHeight < 1
+                || (long) (dataTop + dataHeight - 1) * rowStride + (long) (dataLeft + dataWidth - 1) * pixelStride >= plane.capacity())
+            throw new IllegalArgumentException("Window does not fit in the plane");
+        this.plane = plane;
+        this.reader = plane.duplicate();
+        this.rowStride = rowStride;
+        this.pixelStride = pixelStride;
+        this.dataLeft = dataLeft;
+        this.dataTop = dataTop;
+        this.dataWidth = dataWidth;
+        this.dataHeight = dataHeight;
+        this.rotation = rotation % 360;
+    }
+
+    /**
+     * Moves the source (and its crop) on to the next frame, if the frame has the same geometry.
+     *
+     * @return false if it hasn't, a new source is needed then
+     */
+    public boolean wrap(ByteBuffer plane, int rowStride, int pixelStride, int width, int height, int rotation) {
+        if (rowStride != this.rowStride || pixelStride != this.pixelStride || rotation % 360 != this.rotation
+                || dataLeft != 0 || dataTop != 0 || width != dataWidth || height != dataHeight || plane.capacity() != this.plane.capacity())
+            return false;
+        setPlane(plane);
+        return true;
+    }
+
+    private void setPlane(ByteBuffer plane) {
+        if (plane == this.plane)
+            return;
+        this.plane = plane;
+        this.reader = plane.duplicate();
+        if (crop != null)
+            crop.setPlane(plane);
+    }
+
+    // Offset in the plane of the pixel at (x, y) of the window
+    private int offset(int x, int y) {
+        return (dataTop + y) * rowStride + (dataLeft + x) * pixelStride;
+    }
+
+    // Offset in the plane of the pixel at (x, y) of the upright frame
+    private int uprightOffset(int x, int y) {
+        switch (rotation) {
+            case 90:
+                return offset(y, dataHeight - 1 - x);
+            case 180:
+                return offset(dataWidth - 1 - x, dataHeight - 1 - y);
+            case 270:
+                return offset(dataWidth - 1 - y, x);
+            default:
+                return offset(x, y);
+        }
+    }
+
+    @Override
+    public byte[] getRow(int y, byte[] row) {
+        if (y < 0 || y >= getHeight())
+            throw new IllegalArgumentException("Requested row is outside the image: " + y);
+        int width = getWidth();
+        if (row == null || row.length < width)
+            row = new byte[width];
+        if (rotation == 0 && pixelStride == 1) {
+            reader.position(offset(0, y));
+            reader.get(row, 0, width);
+            return row;
+        }
+        for (int x = 0; x < width; x++)
+            row[x] = plane.get(uprightOffset(x, y));
+        return row;
+    }
+
+    @Override
+    public byte[] getMatrix() {
+        return getMatrix(null);
+    }
+
+    /**
+     * The frame, upright, in matrix if it has the size of the frame (else in a new array).
+     */
+    byte[] getMatrix(byte[] matrix) {
+        int width = getWidth();
+        int height = getHeight();
+        if (matrix == null || matrix.length != width * height)
+            matrix = new byte[width * height];
+        if (rotation == 0 && pixelStride == 1) {
+            for (int y = 0; y < height; y++) {
+                reader.position(offset(0, y));
+                reader.get(matrix, y * width, width);
+            }
+            return matrix;
+        }
+        // Walk the buffer in its own order, each window row becomes a column (or reversed row) of the frame
+        int dataRowLength = (dataWidth - 1) * pixelStride + 1;
+        if (dataRow == null || dataRow.length != dataRowLength)
+            dataRow = new byte[dataRowLength];
+        for (int dy = 0; dy < dataHeight; dy++) {
+            reader.position(offset(0, dy));
+            reader.get(dataRow, 0, dataRowLength);
+            for (int dx = 0; dx < dataWidth; dx++) {
+                byte value = dataRow[dx * pixelStride];
+                switch (rotation) {
+                    case 90:
+                        matrix[dx * width + dataHeight - 1 - dy] = value;
+                        break;
+                    case 180:
+                        matrix[(dataHeight - 1 - dy) * width + dataWidth - 1 - dx] = value;
+                        break;
+                    case 270:
+                        matrix[(dataWidth - 1 - dx) * width + dy] = value;
+                        break;
+                    default:
+                        matrix[dy * width + dx] = value;
+                        break;
+                }
+            }
+        }
+        return matrix;
+    }
+
+    @Override
+    public boolean isCropSupported() {
+        return true;
+    }
+
+    @Override
+    public LuminanceSource crop(int left, int top, int width, int height) {
+        if (left < 0 || top < 0 || width < 1 || height < 1 || left + width > getWidth() || top + height > getHeight())
+            throw new IllegalArgumentException("Crop rectangle does not fit within the frame");
+        switch (rotation) {
+            case 90:
+                return window(dataLeft + top, dataTop + dataHeight - left - width, height, width);
+            case 180:
+                return window(dataLeft + dataWidth - left - width, dataTop + dataHeight - top - height, width, height);
+            case 270:
+                return window(dataLeft + dataWidth - top - height, dataTop + left, height, width);
+            default:
+                return window(dataLeft + left, dataTop + top, width, height);
+        }
+    }
+
+    private PlaneLuminanceSource window(int left, int top, int width, int height) {
+        PlaneLuminanceSource window = crop;
+        if (window == null || window.dataLeft != left || window.dataTop != top || window.dataWidth != width || window.dataHeight != height) {
+            window = new PlaneLuminanceSource(plane, rowStride, pixelStride, left, top, width, height, rotation);
+            crop = window;
+        }
+        return window;
+    }
+
+    /**
+     * The frame as it is now, in memory of its own, for decoders which outlive the camera buffer.
+     */
+    public LuminanceSource copy() {
+        return new PlanarYUVLuminanceSource(getMatrix(), getWidth(), getHeight(), 0, 0, getWidth(), getHeight(), false);
+    }
+}
@@ -0,0 +1,178 @@
+package com.bitpay.cordova.qrscanner;
+
+import com.google.zxing.Binarizer;
+import com.google.zxing.LuminanceSource;
+import com.google.zxing.NotFoundException;
+import com.google.zxing.common.BitMatrix;
+import com.google.zxing.common.GlobalHistogramBinarizer;
+import com.google.zxing.common.HybridBinarizer;
+
+/**
+ * ZXing's HybridBinarizer, computing the same black matrix, in the {@link Buffers} of the decoder:
+ * the luminance matrix (for sources which can fill one, see {@link PlaneLuminanceSource}), the
+ * black points of the blocks and the black matrix itself are allocated once per frame size and
+ * reused for every following frame, instead of for each frame. A preview frame is about a
+ * megabyte of these, so this takes most of the garbage out of the scan loop.
+ *
+ * The matrix of a frame is overwritten by the next one: a binarizer is only valid while its
+ * frame is decoded, with buffers used by one decoder at a time. Crops of the bitmap (taken by the
+ * multiple code reader) get a HybridBinarizer of their own.
+ */
+final class PooledBinarizer extends GlobalHistogramBinarizer {
+
+    // The constants of HybridBinarizer: 8x8 blocks, thresholds from the 5x5 blocks around each
+    private static final int BLOCK_SIZE_POWER = 3;
+    private static final int BLOCK_SIZE = 1 << BLOCK_SIZE_POWER;
+    private static final int BLOCK_SIZE_MASK = BLOCK_SIZE - 1;
+    private static final int MINIMUM_DIMENSION = BLOCK_SIZE * 5;
+    private static final int MIN_DYNAMIC_RANGE = 24;
+
+    /**
+     * The memory reused from frame to frame, one per decoder.
+     */
+    static final class Buffers {
+        private byte[] luminances;
+        private int[][] blackPoints;
+        private BitMatrix matrix;
+
+        private byte[] luminances(LuminanceSource source) {
+            if (source instanceof PlaneLuminanceSource) {
+                luminances = ((PlaneLuminanceSource) source).getMatrix(luminances);
+                return luminances;
+            }
+            return source.getMatrix();
+        }
+
+        private int[][] blackPoints(int subWidth, int subHeight) {
+            if (blackPoints == null || blackPoints.length != subHeight || blackPoints[0].length != subWidth)
+                blackPoints = new int[subHeight][subWidth];
+            return blackPoints;
+        }
+
+        private BitMatrix matrix(int width, int height) {
+            if (matrix == null || matrix.getWidth() != width || matrix.getHeight() != height)
+                matrix = new BitMatrix(width, height);
+            else
+                matrix.clear();
+            return matrix;
+        }
+    }
+
+    private final Buffers buffers;
+    private BitMatrix matrix;
+
+    PooledBinarizer(LuminanceSource source, Buffers buffers) {
+        super(source);
+        this.buffers = buffers;
+    }
+
+    @Override
+    public BitMatrix getBlackMatrix() throws NotFoundException {
+        if (matrix != null)
+            return matrix;
+        LuminanceSource source = getLuminanceSource();
+        int width = source.getWidth();
+        int height = source.getHeight();
+        if (width < MINIMUM_DIMENSION || height < MINIMUM_DIMENSION) {
+            matrix = super.getBlackMatrix();
+            return matrix;
+        }
+        byte[] luminances = buffers.luminances(source);
+        int subWidth = width >> BLOCK_SIZE_POWER;
+        if ((width & BLOCK_SIZE_MASK) != 0)
+            subWidth++;
+        int subHeight = height >> BLOCK_SIZE_POWER;
+        if ((height & BLOCK_SIZE_MASK) != 0)
+            subHeight++;
+        int[][] blackPoints = buffers.blackPoints(subWidth, subHeight);
+        calculateBlackPoints(luminances, subWidth, subHeight, width, height, blackPoints);
+        BitMatrix newMatrix = buffers.matrix(width, height);
+        calculateThresholdForBlock(luminances, subWidth, subHeight, width, height, blackPoints, newMatrix);
+        matrix = newMatrix;
+        return matrix;
+    }
+
+    @Override
+    public Binarizer createBinarizer(LuminanceSource source) {
+        return new HybridBinarizer(source);
+    }
+
+    // Thresholds each block at the average black point of the 5x5 blocks around it
+    private static void calculateThresholdForBlock(byte[] luminances, int subWidth, int subHeight, int width, int height,
+                                                   int[][] blackPoints, BitMatrix matrix) {
+        int maxYOffset = height - BLOCK_SIZE;
+        int maxXOffset = width - BLOCK_SIZE;
+        for (int y = 0; y < subHeight; y++) {
+            int yoffset = Math.min(y << BLOCK_SIZE_POWER, maxYOffset);
+            int top = cap(y, subHeight - 3);
+            for (int x = 0; x < subWidth; x++) {
+                int xoffset = Math.min(x << BLOCK_SIZE_POWER, maxXOffset);
+                int left = cap(x, subWidth - 3);
+                int sum = 0;
+                for (int z = -2; z <= 2; z++) {
+                    int[] blackRow = blackPoints[top + z];
+                    sum += blackRow[left - 2] + blackRow[left - 1] + blackRow[left] + blackRow[left + 1] + blackRow[left + 2];
+                }
+                thresholdBlock(luminances, xoffset, yoffset, sum / 25, width, matrix);
+            }
+        }
+    }
+
+    private static int cap(int value, int max) {
+        return value < 2 ? 2 : Math.min(value, max);
+    }
+
+    private static void thresholdBlock(byte[] luminances, int xoffset, int yoffset, int threshold, int stride, BitMatrix matrix) {
+        for (int y = 0, offset = yoffset * stride + xoffset; y < BLOCK_SIZE; y++, offset += stride) {
+            for (int x = 0; x < BLOCK_SIZE; x++) {
+                // <= so that black (0) pixels are black even if the threshold is 0
+                if ((luminances[offset + x] & 0xFF) <= threshold)
+                    matrix.set(xoffset + x, yoffset + y);
+            }
+        }
+    }
+
+    // The black point of each block: its average, or for flat blocks a guess from the neighbours
+    private static void calculateBlackPoints(byte[] luminances, int subWidth, int subHeight, int width, int height,
+                                             int[][] blackPoints) {
+        int maxYOffset = height - BLOCK_SIZE;
+        int maxXOffset = width - BLOCK_SIZE;
+        for (int y = 0; y < subHeight; y++) {
+            int yoffset = Math.min(y << BLOCK_SIZE_POWER, maxYOffset);
+            for (int x = 0; x < subWidth; x++) {
+                int xoffset = Math.min(x << BLOCK_SIZE_POWER, maxXOffset);
+                int sum = 0;
+                int min = 0xFF;
+                int max = 0;
+                for (int yy = 0, offset = yoffset * width + xoffset; yy < BLOCK_SIZE; yy++, offset += width) {
+                    for (int xx = 0; xx < BLOCK_SIZE; xx++) {
+                        int pixel = luminances[offset + xx] & 0xFF;
+                        sum += pixel;
+                        if (pixel < min)
+                            min = pixel;
+                        if (pixel > max)
+                            max = pixel;
+                    }
+                    // Once the range is met, only the sum is needed for the remaining rows
+                    if (max - min > MIN_DYNAMIC_RANGE) {
+                        for (yy++, offset += width; yy < BLOCK_SIZE; yy++, offset += width) {
+                            for (int xx = 0; xx < BLOCK_SIZE; xx++)
+                                sum += luminances[offset + xx] & 0xFF;
+                        }
+                    }
+                }
+                int average = sum >> (BLOCK_SIZE_POWER * 2);
+                if (max - min <= MIN_DYNAMIC_RANGE) {
+                    // Flat block: assume it is background, lighter than the black point of its neighbours
+                    average = min / 2;
+                    if (y > 0 && x > 0) {
+                        int averageNeighborBlackPoint = (blackPoints[y - 1][x] + (2 * blackPoints[y][x - 1]) + blackPoints[y - 1][x - 1]) / 4;
+                        if (min < averageNeighborBlackPoint)
+                            average = averageNeighborBlackPoint;
+                    }
+                }
+                blackPoints[y][x] = average;
+            }
+        }
+    }
+}
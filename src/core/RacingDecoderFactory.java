@@ -0,0 +1,163 @@
+package com.bitpay.cordova.qrscanner;
+
+import com.google.zxing.BinaryBitmap;
+import com.google.zxing.DecodeHintType;
+import com.google.zxing.LuminanceSource;
+import com.google.zxing.PlanarYUVLuminanceSource;
+import com.google.zxing.Result;
+import com.google.zxing.common.GlobalHistogramBinarizer;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Hands each frame to several variants of the decoder at once, on a pool with a thread per variant,
+ * and returns the first result:
+ * <ul>
+ * <li>HybridBinarizer, the default, best for uneven lighting,</li>
+ * <li>GlobalHistogramBinarizer, which copes better with glare and low contrast,</li>
+ * <li>HybridBinarizer on the inverted frame (alsoInverted),</li>
+ * <li>HybridBinarizer on the frame turned by 90 degrees (alsoRotated): 1D readers only look for
+ * vertical codes in sources which can be rotated, and preview frames can't.</li>
+ * </ul>
+ *
+ * ZXing can't be interrupted, so the losers of a race run to the end in the background. Their
+ * result is dropped, and a variant still busy with an earlier frame sits out the next ones. Frames
+ * read in place from a camera buffer ({@link PlaneLuminanceSource}) are copied for the race, the
+ * camera reuses the buffer as soon as decode returns.
+ */
+class RacingDecoderFactory implements FrameDecoderFactory {
+
+    enum Variant {
+        HYBRID, GLOBAL_HISTOGRAM, INVERTED, ROTATED
+    }
+
+    private final DecoderConfig config;
+    private final List<Variant> variants;
+    private final ThreadPoolExecutor workers;
+
+    RacingDecoderFactory(DecoderConfig config) {
+        this.config = config;
+        this.variants = new ArrayList<>();
+        variants.add(Variant.HYBRID);
+        variants.add(Variant.GLOBAL_HISTOGRAM);
+        if (config.alsoInverted)
+            variants.add(Variant.INVERTED);
+        if (config.alsoRotated)
+            variants.add(Variant.ROTATED);
+        int threads = Math.min(variants.size(), Runtime.getRuntime().availableProcessors());
+        this.workers = new ThreadPoolExecutor(threads, threads, 30, TimeUnit.SECONDS, new LinkedBlockingQueue<Runnable>());
+        this.workers.allowCoreThreadTimeOut(true);
+    }
+
+    @Override
+    public FrameDecoder createDecoder() {
+        Map<DecodeHintType, Object> hints = config.getReaderHints();
+        List<VariantDecoder> decoders = new ArrayList<>(variants.size());
+        for (Variant variant : variants)
+            decoders.add(new VariantDecoder(variant, hints));
+        return new RacingDecoder(decoders, workers);
+    }
+
+    private static class VariantDecoder extends FormatDecoder {
+        final Variant variant;
+        // Set while decoding a frame, possibly one whose race is long over
+        final AtomicBoolean busy = new AtomicBoolean();
+
+        VariantDecoder(Variant variant, Map<DecodeHintType, ?> hints) {
+            super(hints);
+            this.variant = variant;
+        }
+
+        @Override
+        public Result decode(LuminanceSource source) {
+            if (variant == Variant.INVERTED)
+                source = source.invert();
+            else if (variant == Variant.ROTATED)
+                source = rotate(source);
+            return super.decode(source);
+        }
+
+        @Override
+        protected BinaryBitmap toBitmap(LuminanceSource source) {
+            if (variant == Variant.GLOBAL_HISTOGRAM)
+                return new BinaryBitmap(new GlobalHistogramBinarizer(source));
+            return super.toBitmap(source);
+        }
+
+        // A copy of the frame turned counterclockwise, wrapped like a preview frame
+        private static LuminanceSource rotate(LuminanceSource source) {
+            if (source.isRotateSupported())
+                return source.rotateCounterClockwise();
+            byte[] matrix = source.getMatrix();
+            int width = source.getWidth();
+            int height = source.getHeight();
+            byte[] rotated = new byte[matrix.length];
+            for (int y = 0; y < height; y++) {
+                for (int x = 0; x < width; x++)
+                    rotated[(width - 1 - x) * height + y] = matrix[y * width + x];
+            }
+            return new PlanarYUVLuminanceSource(rotated, height, width, 0, 0, height, width, false);
+        }
+    }
+
+    private static class RacingDecoder implements FrameDecoder {
+        private final List<VariantDecoder> decoders;
+        private final ThreadPoolExecutor workers;
+
+        RacingDecoder(List<VariantDecoder> decoders, ThreadPoolExecutor workers) {
+            this.decoders = decoders;
+            this.workers = workers;
+        }
+
+        @Override
+        public Result decode(LuminanceSource frame) {
+            final LuminanceSource source = frame instanceof PlaneLuminanceSource ? ((PlaneLuminanceSource) frame).copy() : frame;
+            ExecutorCompletionService<Result> race = new ExecutorCompletionService<>(workers);
+            int started = 0;
+            for (final VariantDecoder decoder : decoders) {
+                if (!decoder.busy.compareAndSet(false, true))
+                    continue;
+                try {
+                    race.submit(new Callable<Result>() {
+                        public Result call() {
+                            try {
+                                return decoder.decode(source);
+                            } finally {
+                                decoder.busy.set(false);
+                            }
+                        }
+                    });
+                    started++;
+                } catch (RejectedExecutionException e) {
+                    decoder.busy.set(false);
+                }
+            }
+            for (int i = 0; i < started; i++) {
+                try {
+                    Result result = race.take().get();
+                    if (result != null)
+                        return result;
+                } catch (InterruptedException e) {
+                    // Decoding stopped, the decoder thread is quitting
+                    Thread.currentThread().interrupt();
+                    return null;
+                } catch (ExecutionException e) {
+                    Logger.getLogger("QRScanner").log(Level.SEVERE, "Decoder variant failed", e.getCause());
+                }
+            }
+            return null;
+        }
+    }
+}
@@ -0,0 +1,170 @@
+package com.bitpay.cordova.qrscanner;
+
+import com.google.zxing.LuminanceSource;
+import com.google.zxing.Result;
+import com.google.zxing.ResultMetadataType;
+import com.google.zxing.ResultPoint;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.util.Map;
+
+/**
+ * Wraps the configured decoder factory and crops every frame to the scan region
+ * before it is binarized. The preview hands over the full frame, so the region
+ * can be changed while decoding.
+ *
+ * While a region is set, every {@link #SAMPLE_INTERVAL}th frame is also decoded
+ * in full (and the result dropped) to measure the decode time saved by the crop.
+ *
+ * Results are returned in frame coordinates, with a {@link ResultEncoder.DecodeInfo}
+ * stored as {@link ResultMetadataType#OTHER}.
+ */
+class RegionDecoderFactory implements FrameDecoderFactory {
+
+    private static final int SAMPLE_INTERVAL = 30;
+    // Weight of the newest frame in the moving decode time averages
+    private static final double SMOOTHING = 0.1;
+
+    private volatile FrameDecoderFactory decoderFactory;
+    private volatile ScanRegion region;
+
+    // Written by the decoder thread only
+    private volatile double regionDecodeNanos;
+    private volatile double fullFrameDecodeNanos;
+
+    RegionDecoderFactory(FrameDecoderFactory decoderFactory) {
+        this.decoderFactory = decoderFactory;
+    }
+
+    FrameDecoderFactory getDecoderFactory() {
+        return decoderFactory;
+    }
+
+    /**
+     * Takes effect with the next decoder created.
+     */
+    void setDecoderFactory(FrameDecoderFactory decoderFactory) {
+        this.decoderFactory = decoderFactory;
+    }
+
+    ScanRegion getRegion() {
+        return region;
+    }
+
+    /**
+     * Takes effect with the next frame. A null region decodes the default centered square.
+     */
+    void setRegion(ScanRegion region) {
+        this.region = region;
+        regionDecodeNanos = 0;
+        fullFrameDecodeNanos = 0;
+    }
+
+    @Override
+    public FrameDecoder createDecoder() {
+        return new RegionDecoder(decoderFactory.createDecoder());
+    }
+
+    /**
+     * The region and the measured decode times (in milliseconds) with and without the crop.
+     */
+    JSONObject toJSON() throws JSONException {
+        ScanRegion region = this.region;
+        JSONObject info = new JSONObject();
+        info.put("region", region != null ? region.toJSON() : JSONObject.NULL);
+        double regionNanos = regionDecodeNanos;
+        double fullFrameNanos = fullFrameDecodeNanos;
+        if (region != null && regionNanos > 0 && fullFrameNanos > 0) {
+            info.put("regionDecodeMs", regionNanos / 1e6);
+            info.put("fullFrameDecodeMs", fullFrameNanos / 1e6);
+            info.put("decodeTimeReduction", 1 - regionNanos / fullFrameNanos);
+        }
+        return info;
+    }
+
+    /**
+     * Moves the result points (also of all codes found in the 'multiple' decode mode) from the
+     * crop to frame coordinates and records the decode time.
+     */
+    private static Result toFrameResult(Result result, int[] bounds, long decodeNanos) {
+        Map<ResultMetadataType, Object> metadata = result.getResultMetadata();
+        Object other = metadata != null ? metadata.get(ResultMetadataType.OTHER) : null;
+        EscalatingDecoderFactory.Rung rung = other instanceof EscalatingDecoderFactory.Rung ? (EscalatingDecoderFactory.Rung) other : null;
+        Result[] codes = other instanceof ResultEncoder.DecodeInfo ? ((ResultEncoder.DecodeInfo) other).codes : null;
+        if (codes != null) {
+            Result[] frameCodes = new Result[codes.length];
+            for (int i = 0; i < codes.length; i++)
+                frameCodes[i] = translate(codes[i], bounds);
+            codes = frameCodes;
+        }
+        Result frameResult = translate(result, bounds);
+        frameResult.putMetadata(ResultMetadataType.OTHER, new ResultEncoder.DecodeInfo(rung, decodeNanos, codes));
+        return frameResult;
+    }
+
+    private static Result translate(Result result, int[] bounds) {
+        ResultPoint[] points = result.getResultPoints();
+        if (bounds != null && points != null) {
+            ResultPoint[] framePoints = new ResultPoint[points.length];
+            for (int i = 0; i < points.length; i++) {
+                if (points[i] != null)
+                    framePoints[i] = new ResultPoint(points[i].getX() + bounds[0], points[i].getY() + bounds[1]);
+            }
+            points = framePoints;
+        }
+        Result frameResult = new Result(result.getText(), result.getRawBytes(), result.getNumBits(), points,
+                result.getBarcodeFormat(), result.getTimestamp());
+        Map<ResultMetadataType, Object> metadata = result.getResultMetadata();
+        if (metadata != null)
+            frameResult.putAllMetadata(metadata);
+        return frameResult;
+    }
+
+    private static double smooth(double average, long sample) {
+        return average == 0 ? sample : average + SMOOTHING * (sample - average);
+    }
+
+    private class RegionDecoder implements FrameDecoder {
+        private final FrameDecoder decoder;
+        private int frames;
+        // The bounds of the last frame, reused while the region and frame size stay the same
+        private ScanRegion boundsRegion;
+        private int boundsWidth;
+        private int boundsHeight;
+        private int[] bounds;
+
+        RegionDecoder(FrameDecoder decoder) {
+            this.decoder = decoder;
+        }
+
+        @Override
+        public Result decode(LuminanceSource source) {
+            ScanRegion region = RegionDecoderFactory.this.region;
+            if (region != null && ++frames % SAMPLE_INTERVAL == 0) {
+                long start = System.nanoTime();
+                decoder.decode(source);
+                fullFrameDecodeNanos = smooth(fullFrameDecodeNanos, System.nanoTime() - start);
+            }
+            int[] bounds = bounds(region, source.getWidth(), source.getHeight());
+            long start = System.nanoTime();
+            Result result = decoder.decode(ScanRegion.crop(source, bounds));
+            long decodeNanos = System.nanoTime() - start;
+            if (region != null)
+                regionDecodeNanos = smooth(regionDecodeNanos, decodeNanos);
+            if (result == null)
+                return null;
+            return toFrameResult(result, source.isCropSupported() ? bounds : null, decodeNanos);
+        }
+
+        private int[] bounds(ScanRegion region, int width, int height) {
+            if (bounds == null || region != boundsRegion || width != boundsWidth || height != boundsHeight) {
+                bounds = region != null ? region.bounds(width, height) : ScanRegion.defaultBounds(width, height);
+                boundsRegion = region;
+                boundsWidth = width;
+                boundsHeight = height;
+            }
+            return bounds;
+        }
+    }
+}
@@ -0,0 +1,282 @@
+package com.bitpay.cordova.qrscanner;
+
+import com.google.zxing.BarcodeFormat;
+import com.google.zxing.Result;
+import com.google.zxing.ResultMetadataType;
+import com.google.zxing.ResultPoint;
+import org.json.JSONArray;
+
+import java.util.Collections;
+import java.util.EnumSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Serializes scan results to the JSON string handed to the scan callbacks.
+ *
+ * The JSON is written straight into a builder which is kept between results, so
+ * encoding a result allocates little more than the resulting string. Not thread
+ * safe, results are encoded on the command thread.
+ */
+final class ResultEncoder {
+
+    enum Field {
+        // The decoded text
+        TEXT("text"),
+        // The barcode format
+        TYPE("type"),
+        // The pass of the adaptive decode mode which found the code, see EscalatingDecoderFactory
+        RUNG("rung"),
+        // The raw bytes of the code, base64 encoded
+        RAW_BYTES("rawBytes"),
+        // The byte segments of the code, base64 encoded
+        BYTE_SEGMENTS("byteSegments"),
+        // Error correction level, orientation, structured append and the other ZXing result metadata
+        METADATA("metadata"),
+        // Finder patterns etc., in preview frame pixels
+        RESULT_POINTS("resultPoints"),
+        // When the code was decoded, in milliseconds since the epoch
+        TIMESTAMP("timestamp"),
+        // Time the decoder spent on the frame, in milliseconds
+        DECODE_TIME("decodeTime");
+
+        final String jsonName;
+
+        Field(String jsonName) {
+            this.jsonName = jsonName;
+        }
+    }
+
+    /**
+     * The fields sent unless the resultFields option selects others.
+     */
+    static final Set<Field> DEFAULT_FIELDS = Collections.unmodifiableSet(EnumSet.of(Field.TEXT, Field.TYPE, Field.RUNG));
+
+    /**
+     * Decoding details which ZXing has no metadata type for, stored as {@link ResultMetadataType#OTHER}.
+     */
+    static final class DecodeInfo {
+        final EscalatingDecoderFactory.Rung rung;
+        final long decodeNanos;
+        // All codes of the frame in the 'multiple' decode mode, see MultiDecoderFactory
+        final Result[] codes;
+
+        DecodeInfo(EscalatingDecoderFactory.Rung rung, long decodeNanos, Result[] codes) {
+            this.rung = rung;
+            this.decodeNanos = decodeNanos;
+            this.codes = codes;
+        }
+    }
+
+    private static final char[] BASE64 = "ABCDEFGHIJKLMNOPQRSTUVWXYZabcdefghijklmnopqrstuvwxyz0123456789+/".toCharArray();
+
+    private final StringBuilder json = new StringBuilder(256);
+
+    /**
+     * @throws IllegalArgumentException if a name isn't a field
+     */
+    static Set<Field> parseFields(JSONArray fieldNames) {
+        EnumSet<Field> fields = EnumSet.noneOf(Field.class);
+        for (int i = 0; i < fieldNames.length(); i++) {
+            Field field = null;
+            String name = fieldNames.optString(i, "");
+            for (Field candidate : Field.values()) {
+                if (candidate.jsonName.equals(name))
+                    field = candidate;
+            }
+            if (field == null)
+                throw new IllegalArgumentException("Unknown result field: " + fieldNames.opt(i));
+            fields.add(field);
+        }
+        return Collections.unmodifiableSet(fields);
+    }
+
+    /**
+     * Encodes the result. All codes found in a frame by the 'multiple' decode mode are encoded
+     * as {"codes": [...]}, each code with its result points; the timestamp and decode time
+     * (which the codes share) are sent once, next to the codes.
+     */
+    String encode(Result result, Set<Field> fields) {
+        json.setLength(0);
+        Map<ResultMetadataType, Object> metadata = result.getResultMetadata();
+        Object other = metadata != null ? metadata.get(ResultMetadataType.OTHER) : null;
+        DecodeInfo decodeInfo = other instanceof DecodeInfo ? (DecodeInfo) other : null;
+
+        if (decodeInfo != null && decodeInfo.codes != null) {
+            Set<Field> codeFields = EnumSet.of(Field.RESULT_POINTS);
+            codeFields.addAll(fields);
+            codeFields.remove(Field.TIMESTAMP);
+            codeFields.remove(Field.DECODE_TIME);
+            json.append("{\"codes\":[");
+            for (int i = 0; i < decodeInfo.codes.length; i++) {
+                if (i > 0)
+                    json.append(',');
+                json.append('{');
+                appendFields(decodeInfo.codes[i], codeFields, null);
+                json.append('}');
+            }
+            json.append(']');
+            appendTiming(result, fields, decodeInfo);
+            return json.append('}').toString();
+        }
+
+        json.append('{');
+        appendFields(result, fields, decodeInfo);
+        appendTiming(result, fields, decodeInfo);
+        return json.append('}').toString();
+    }
+
+    private void appendFields(Result result, Set<Field> fields, DecodeInfo decodeInfo) {
+        Map<ResultMetadataType, Object> metadata = result.getResultMetadata();
+        if (fields.contains(Field.TEXT))
+            name(Field.TEXT.jsonName).string(result.getText());
+        if (fields.contains(Field.TYPE)) {
+            BarcodeFormat format = result.getBarcodeFormat();
+            name(Field.TYPE.jsonName).string(format != null ? format.toString() : null);
+        }
+        if (fields.contains(Field.RUNG) && decodeInfo != null && decodeInfo.rung != null)
+            name(Field.RUNG.jsonName).string(decodeInfo.rung.toString());
+        if (fields.contains(Field.RAW_BYTES) && result.getRawBytes() != null)
+            name(Field.RAW_BYTES.jsonName).base64(result.getRawBytes());
+        if (fields.contains(Field.BYTE_SEGMENTS) && metadata != null && metadata.get(ResultMetadataType.BYTE_SEGMENTS) instanceof List) {
+            name(Field.BYTE_SEGMENTS.jsonName).json.append('[');
+            boolean first = true;
+            for (Object segment : (List<?>) metadata.get(ResultMetadataType.BYTE_SEGMENTS)) {
+                if (segment instanceof byte[]) {
+                    if (!first)
+                        json.append(',');
+                    base64((byte[]) segment);
+                    first = false;
+                }
+            }
+            json.append(']');
+        }
+        if (fields.contains(Field.METADATA))
+            name(Field.METADATA.jsonName).metadata(metadata);
+        if (fields.contains(Field.RESULT_POINTS) && result.getResultPoints() != null) {
+            name(Field.RESULT_POINTS.jsonName).json.append('[');
+            boolean first = true;
+            for (ResultPoint point : result.getResultPoints()) {
+                if (point == null)
+                    continue;
+                if (!first)
+                    json.append(',');
+                json.append("{\"x\":").append(point.getX()).append(",\"y\":").append(point.getY()).append('}');
+                first = false;
+            }
+            json.append(']');
+        }
+    }
+
+    private void appendTiming(Result result, Set<Field> fields, DecodeInfo decodeInfo) {
+        if (fields.contains(Field.TIMESTAMP))
+            name(Field.TIMESTAMP.jsonName).json.append(result.getTimestamp());
+        if (fields.contains(Field.DECODE_TIME) && decodeInfo != null)
+            name(Field.DECODE_TIME.jsonName).json.append(decodeInfo.decodeNanos / 1e6);
+    }
+
+    private ResultEncoder metadata(Map<ResultMetadataType, Object> metadata) {
+        json.append('{');
+        if (metadata != null) {
+            for (Map.Entry<ResultMetadataType, Object> entry : metadata.entrySet()) {
+                Object value = entry.getValue();
+                switch (entry.getKey()) {
+                    case ERROR_CORRECTION_LEVEL:
+                    case POSSIBLE_COUNTRY:
+                    case UPC_EAN_EXTENSION:
+                    case SUGGESTED_PRICE:
+                        name(camelCase(entry.getKey())).string(String.valueOf(value));
+                        break;
+                    case ORIENTATION:
+                    case ISSUE_NUMBER:
+                    case STRUCTURED_APPEND_SEQUENCE:
+                    case STRUCTURED_APPEND_PARITY:
+                        if (value instanceof Number)
+                            name(camelCase(entry.getKey())).json.append(((Number) value).longValue());
+                        break;
+                    default:
+                        // Byte segments and the decode info have fields of their own,
+                        // PDF417 extra metadata has no useful serialization
+                        break;
+                }
+            }
+        }
+        json.append('}');
+        return this;
+    }
+
+    // ERROR_CORRECTION_LEVEL -> errorCorrectionLevel
+    private static String camelCase(ResultMetadataType type) {
+        String[] words = type.name().toLowerCase().split("_");
+        StringBuilder name = new StringBuilder(words[0]);
+        for (int i = 1; i < words.length; i++)
+            name.append(Character.toUpperCase(words[i].charAt(0))).append(words[i], 1, words[i].length());
+        return name.toString();
+    }
+
+    private ResultEncoder name(String name) {
+        if (json.charAt(json.length() - 1) != '{')
+            json.append(',');
+        string(name);
+        json.append(':');
+        return this;
+    }
+
+    // Standard base64 with padding, written straight into the builder (java.util.Base64 needs Android 8)
+    private ResultEncoder base64(byte[] bytes) {
+        json.append('"');
+        for (int i = 0; i < bytes.length; i += 3) {
+            int remaining = bytes.length - i;
+            int chunk = (bytes[i] & 0xff) << 16
+                    | (remaining > 1 ? (bytes[i + 1] & 0xff) << 8 : 0)
+                    | (remaining > 2 ? bytes[i + 2] & 0xff : 0);
+            json.append(BASE64[chunk >>> 18]).append(BASE64[(chunk >>> 12) & 0x3f])
+                    .append(remaining > 1 ? BASE64[(chunk >>> 6) & 0x3f] : '=')
+                    .append(remaining > 2 ? BASE64[chunk & 0x3f] : '=');
+        }
+        json.append('"');
+        return this;
+    }
+
+    private ResultEncoder string(String value) {
+        if (value == null) {
+            json.append("null");
+            return this;
+        }
+        json.append('"');
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            switch (c) {
+                case '"':
+                    json.append("\\\"");
+                    break;
+                case '\\':
+                    json.append("\\\\");
+                    break;
+                case '\n':
+                    json.append("\\n");
+                    break;
+                case '\r':
+                    json.append("\\r");
+                    break;
+                case '\t':
+                    json.append("\\t");
+                    break;
+                default:
+                    // Control characters, and the line separators JavaScript doesn't allow in string literals
+                    if (c < 0x20 || c == '\u2028' || c == '\u2029') {
+                        json.append("\\u");
+                        String hex = Integer.toHexString(c);
+                        for (int pad = hex.length(); pad < 4; pad++)
+                            json.append('0');
+                        json.append(hex);
+                    } else {
+                        json.append(c);
+                    }
+            }
+        }
+        json.append('"');
+        return this;
+    }
+}
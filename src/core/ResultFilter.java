@@ -0,0 +1,388 @@
+package com.bitpay.cordova.qrscanner;
+
+import com.google.zxing.BarcodeFormat;
+import com.google.zxing.Result;
+import com.google.zxing.ResultMetadataType;
+import org.json.JSONArray;
+import org.json.JSONObject;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.regex.Pattern;
+import java.util.regex.PatternSyntaxException;
+
+/**
+ * Acceptance rules for the codes found in preview frames, selected by the "accept" scan option:
+ * the formats, a prefix or a pattern of the text, a length range and a check (a check digit or
+ * the structure of GS1 element strings). A frame whose codes are all rejected counts as a frame
+ * without a code: the decoder keeps running, and nothing is sent to the scan callback.
+ *
+ * Immutable, shared by the decoder threads.
+ */
+final class ResultFilter {
+
+    enum Check {
+        // GS1 check digit (EAN/UPC, GTIN, SSCC, ITF-14) of an all digit text
+        MOD10,
+        // Luhn check digit of an all digit text (card numbers, IMEI)
+        LUHN,
+        // GS1 element strings: known application identifiers, with valid lengths, characters and check digits
+        GS1
+    }
+
+    private static final char GROUP_SEPARATOR = 29;
+    // Symbology identifiers of GS1 codes, prepended by some readers
+    private static final String[] GS1_SYMBOLOGY_IDS = {"]C1", "]e0", "]d2", "]Q3", "]J1"};
+
+    /**
+     * A GS1 application identifier, or a range of them sharing a prefix.
+     */
+    private static final class ApplicationIdentifier {
+        final String prefix;
+        final int length;
+        final int minData;
+        final int maxData;
+        final boolean numeric;
+        // A GS1 check digit ends the data
+        final boolean checkDigit;
+
+        ApplicationIdentifier(String prefix, int length, int minData, int maxData, boolean numeric, boolean checkDigit) {
+            this.prefix = prefix;
+            this.length = length;
+            this.minData = minData;
+            this.maxData = maxData;
+            this.numeric = numeric;
+            this.checkDigit = checkDigit;
+        }
+    }
+
+    private static ApplicationIdentifier ai(String prefix, int length, int minData, int maxData, boolean numeric, boolean checkDigit) {
+        return new ApplicationIdentifier(prefix, length, minData, maxData, numeric, checkDigit);
+    }
+
+    // The application identifiers of the GS1 General Specifications, no prefix is a prefix of another
+    private static final ApplicationIdentifier[] APPLICATION_IDENTIFIERS = {
+            ai("00", 2, 18, 18, true, true), ai("01", 2, 14, 14, true, true), ai("02", 2, 14, 14, true, true),
+            ai("10", 2, 1, 20, false, false),
+            ai("11", 2, 6, 6, true, false), ai("12", 2, 6, 6, true, false), ai("13", 2, 6, 6, true, false),
+            ai("15", 2, 6, 6, true, false), ai("16", 2, 6, 6, true, false), ai("17", 2, 6, 6, true, false),
+            ai("20", 2, 2, 2, true, false), ai("21", 2, 1, 20, false, false), ai("22", 2, 1, 20, false, false),
+            ai("235", 3, 1, 28, false, false),
+            ai("240", 3, 1, 30, false, false), ai("241", 3, 1, 30, false, false), ai("242", 3, 1, 6, true, false),
+            ai("243", 3, 1, 20, false, false), ai("250", 3, 1, 30, false, false), ai("251", 3, 1, 30, false, false),
+            ai("253", 3, 13, 30, false, false), ai("254", 3, 1, 20, false, false), ai("255", 3, 13, 25, true, false),
+            ai("30", 2, 1, 8, true, false),
+            ai("31", 4, 6, 6, true, false), ai("32", 4, 6, 6, true, false), ai("33", 4, 6, 6, true, false),
+            ai("34", 4, 6, 6, true, false), ai("35", 4, 6, 6, true, false), ai("36", 4, 6, 6, true, false),
+            ai("37", 2, 1, 8, true, false),
+            ai("390", 4, 1, 15, true, false), ai("391", 4, 4, 18, true, false), ai("392", 4, 1, 15, true, false),
+            ai("393", 4, 4, 18, true, false), ai("394", 4, 4, 4, true, false), ai("395", 4, 6, 6, true, false),
+            ai("400", 3, 1, 30, false, false), ai("401", 3, 1, 30, false, false), ai("402", 3, 17, 17, true, true),
+            ai("403", 3, 1, 30, false, false),
+            ai("410", 3, 13, 13, true, true), ai("411", 3, 13, 13, true, true), ai("412", 3, 13, 13, true, true),
+            ai("413", 3, 13, 13, true, true), ai("414", 3, 13, 13, true, true), ai("415", 3, 13, 13, true, true),
+            ai("416", 3, 13, 13, true, true), ai("417", 3, 13, 13, true, true),
+            ai("420", 3, 1, 20, false, false), ai("421", 3, 4, 12, false, false), ai("422", 3, 3, 3, true, false),
+            ai("423", 3, 3, 15, true, false), ai("424", 3, 3, 3, true, false), ai("425", 3, 3, 15, true, false),
+            ai("426", 3, 3, 3, true, false), ai("427", 3, 1, 3, false, false),
+            ai("7001", 4, 13, 13, true, false), ai("7002", 4, 1, 30, false, false), ai("7003", 4, 10, 10, true, false),
+            ai("7004", 4, 1, 4, true, false), ai("7005", 4, 1, 12, false, false), ai("7006", 4, 6, 6, true, false),
+            ai("7007", 4, 6, 12, true, false), ai("7008", 4, 1, 3, false, false), ai("7009", 4, 1, 10, false, false),
+            ai("7010", 4, 1, 2, false, false), ai("7020", 4, 1, 20, false, false), ai("7021", 4, 1, 20, false, false),
+            ai("7022", 4, 1, 20, false, false), ai("7023", 4, 1, 30, false, false), ai("703", 4, 3, 30, false, false),
+            ai("710", 3, 1, 20, false, false), ai("711", 3, 1, 20, false, false), ai("712", 3, 1, 20, false, false),
+            ai("713", 3, 1, 20, false, false), ai("714", 3, 1, 20, false, false), ai("715", 3, 1, 20, false, false),
+            ai("723", 4, 2, 30, false, false), ai("7240", 4, 1, 20, false, false),
+            ai("8001", 4, 14, 14, true, false), ai("8002", 4, 1, 20, false, false), ai("8003", 4, 14, 30, false, false),
+            ai("8004", 4, 1, 30, false, false), ai("8005", 4, 6, 6, true, false), ai("8006", 4, 18, 18, true, false),
+            ai("8007", 4, 1, 34, false, false), ai("8008", 4, 8, 12, true, false), ai("8009", 4, 1, 50, false, false),
+            ai("8010", 4, 1, 30, false, false), ai("8011", 4, 1, 12, true, false), ai("8012", 4, 1, 20, false, false),
+            ai("8013", 4, 1, 25, false, false), ai("8017", 4, 18, 18, true, true), ai("8018", 4, 18, 18, true, true),
+            ai("8019", 4, 1, 10, true, false), ai("8020", 4, 1, 25, false, false), ai("8026", 4, 18, 18, true, false),
+            ai("8110", 4, 1, 70, false, false), ai("8111", 4, 4, 4, true, false), ai("8112", 4, 1, 70, false, false),
+            ai("8200", 4, 1, 70, false, false),
+            ai("90", 2, 1, 30, false, false), ai("91", 2, 1, 90, false, false), ai("92", 2, 1, 90, false, false),
+            ai("93", 2, 1, 90, false, false), ai("94", 2, 1, 90, false, false), ai("95", 2, 1, 90, false, false),
+            ai("96", 2, 1, 90, false, false), ai("97", 2, 1, 90, false, false), ai("98", 2, 1, 90, false, false),
+            ai("99", 2, 1, 90, false, false)
+    };
+
+    // null: any
+    private final Set<BarcodeFormat> formats;
+    private final String[] prefixes;
+    private final Pattern pattern;
+    private final int minLength;
+    private final int maxLength;
+    private final Check check;
+
+    private ResultFilter(Set<BarcodeFormat> formats, String[] prefixes, Pattern pattern, int minLength, int maxLength, Check check) {
+        this.formats = formats;
+        this.prefixes = prefixes;
+        this.pattern = pattern;
+        this.minLength = minLength;
+        this.maxLength = maxLength;
+        this.check = check;
+    }
+
+    /**
+     * The filter described by the accept option: {formats, prefix (a string or an array of them),
+     * pattern, minLength, maxLength, check}, or null (accept every code) for null or an empty object.
+     *
+     * @throws IllegalArgumentException if the option is invalid
+     */
+    static ResultFilter fromJSON(Object accept) {
+        if (accept == null || accept == JSONObject.NULL)
+            return null;
+        if (!(accept instanceof JSONObject))
+            throw new IllegalArgumentException("accept must be an object");
+        JSONObject options = (JSONObject) accept;
+        if (options.length() == 0)
+            return null;
+
+        Set<BarcodeFormat> formats = null;
+        if (options.has("formats")) {
+            JSONArray formatNames = options.optJSONArray("formats");
+            if (formatNames == null)
+                throw new IllegalArgumentException("accept.formats must be an array");
+            formats = DecoderConfig.parseFormats(formatNames);
+        }
+
+        String[] prefixes = null;
+        Object prefix = options.opt("prefix");
+        if (prefix instanceof String) {
+            prefixes = new String[]{(String) prefix};
+        } else if (prefix instanceof JSONArray && ((JSONArray) prefix).length() > 0) {
+            JSONArray array = (JSONArray) prefix;
+            prefixes = new String[array.length()];
+            for (int i = 0; i < prefixes.length; i++) {
+                if (!(array.opt(i) instanceof String))
+                    throw new IllegalArgumentException("accept.prefix must be a string or an array of strings");
+                prefixes[i] = array.optString(i);
+            }
+        } else if (prefix != null) {
+            throw new IllegalArgumentException("accept.prefix must be a string or an array of strings");
+        }
+
+        Pattern pattern = null;
+        if (options.has("pattern")) {
+            Object regex = options.opt("pattern");
+            if (!(regex instanceof String))
+                throw new IllegalArgumentException("accept.pattern must be a string");
+            try {
+                pattern = Pattern.compile((String) regex);
+            } catch (PatternSyntaxException e) {
+                throw new IllegalArgumentException("Invalid accept.pattern: " + e.getDescription(), e);
+            }
+        }
+
+        int minLength = optLength(options, "minLength", 0);
+        int maxLength = optLength(options, "maxLength", Integer.MAX_VALUE);
+        if (minLength > maxLength)
+            throw new IllegalArgumentException("accept.minLength must not exceed accept.maxLength");
+
+        Check check = null;
+        if (options.has("check")) {
+            String name = options.optString("check", "").toUpperCase();
+            try {
+                check = Check.valueOf(name);
+            } catch (IllegalArgumentException e) {
+                throw new IllegalArgumentException("Unknown accept.check: " + options.opt("check"), e);
+            }
+        }
+        return new ResultFilter(formats, prefixes, pattern, minLength, maxLength, check);
+    }
+
+    private static int optLength(JSONObject options, String name, int fallback) {
+        if (!options.has(name))
+            return fallback;
+        int length = options.optInt(name, -1);
+        if (length < 0)
+            throw new IllegalArgumentException("accept." + name + " must be a positive number, or 0");
+        return length;
+    }
+
+    /**
+     * The result if its code is accepted, else null. In the 'multiple' decode mode, the rejected
+     * codes are taken out of the result, which is rejected if none is left.
+     */
+    Result filter(Result result) {
+        Map<ResultMetadataType, Object> metadata = result.getResultMetadata();
+        Object other = metadata != null ? metadata.get(ResultMetadataType.OTHER) : null;
+        ResultEncoder.DecodeInfo info = other instanceof ResultEncoder.DecodeInfo ? (ResultEncoder.DecodeInfo) other : null;
+        if (info == null || info.codes == null)
+            return accepts(result) ? result : null;
+
+        List<Result> accepted = new ArrayList<>(info.codes.length);
+        for (Result code : info.codes) {
+            if (accepts(code))
+                accepted.add(code);
+        }
+        if (accepted.size() == info.codes.length)
+            return result;
+        if (accepted.isEmpty())
+            return null;
+        Result[] codes = accepted.toArray(new Result[accepted.size()]);
+        // Like MultiDecoderFactory, the first code (a copy) with all codes as its DecodeInfo
+        Result filtered = new Result(codes[0].getText(), codes[0].getRawBytes(), codes[0].getNumBits(),
+                codes[0].getResultPoints(), codes[0].getBarcodeFormat(), codes[0].getTimestamp());
+        filtered.putAllMetadata(codes[0].getResultMetadata());
+        filtered.putMetadata(ResultMetadataType.OTHER, new ResultEncoder.DecodeInfo(info.rung, info.decodeNanos, codes));
+        return filtered;
+    }
+
+    boolean accepts(Result code) {
+        String text = code.getText();
+        if (text == null)
+            return false;
+        if (formats != null && !formats.contains(code.getBarcodeFormat()))
+            return false;
+        if (text.length() < minLength || text.length() > maxLength)
+            return false;
+        if (prefixes != null && !hasPrefix(text))
+            return false;
+        if (pattern != null && !pattern.matcher(text).find())
+            return false;
+        if (check == Check.MOD10)
+            return isDigits(text, 0, text.length()) && text.length() > 1 && hasMod10CheckDigit(text, 0, text.length());
+        if (check == Check.LUHN)
+            return isDigits(text, 0, text.length()) && text.length() > 1 && hasLuhnCheckDigit(text);
+        if (check == Check.GS1)
+            return isGs1ElementStrings(text);
+        return true;
+    }
+
+    private boolean hasPrefix(String text) {
+        for (String prefix : prefixes) {
+            if (text.startsWith(prefix))
+                return true;
+        }
+        return false;
+    }
+
+    private static boolean isDigits(String text, int start, int end) {
+        for (int i = start; i < end; i++) {
+            char c = text.charAt(i);
+            if (c < '0' || c > '9')
+                return false;
+        }
+        return true;
+    }
+
+    // Weights 3 and 1 alternating from the digit next to the check digit, the last digit of the range
+    private static boolean hasMod10CheckDigit(String text, int start, int end) {
+        int sum = 0;
+        for (int i = end - 2, weight = 3; i >= start; i--, weight = 4 - weight)
+            sum += (text.charAt(i) - '0') * weight;
+        return (10 - sum % 10) % 10 == text.charAt(end - 1) - '0';
+    }
+
+    private static boolean hasLuhnCheckDigit(String text) {
+        int sum = 0;
+        boolean doubled = false;
+        for (int i = text.length() - 1; i >= 0; i--, doubled = !doubled) {
+            int digit = text.charAt(i) - '0';
+            if (doubled) {
+                digit *= 2;
+                if (digit > 9)
+                    digit -= 9;
+            }
+            sum += digit;
+        }
+        return sum % 10 == 0;
+    }
+
+    /**
+     * Element strings as encoded (application identifier and data, variable length data ended by
+     * a group separator unless last) or as printed, with the identifiers in parentheses, which is
+     * how ZXing returns GS1 DataBar Expanded. A symbology identifier or group separator in front
+     * is skipped. Code 128 results carry them only when read as GS1-128, which the decoder does
+     * for the 'gs1' check (DecodeHintType.ASSUME_GS1, see DecoderConfig).
+     */
+    static boolean isGs1ElementStrings(String text) {
+        int position = 0;
+        for (String id : GS1_SYMBOLOGY_IDS) {
+            if (text.startsWith(id)) {
+                position = id.length();
+                break;
+            }
+        }
+        if (position < text.length() && text.charAt(position) == GROUP_SEPARATOR)
+            position++;
+        if (position == text.length())
+            return false;
+        return text.charAt(position) == '(' ? isPrintedElementStrings(text, position) : isEncodedElementStrings(text, position);
+    }
+
+    private static boolean isEncodedElementStrings(String text, int position) {
+        while (position < text.length()) {
+            ApplicationIdentifier ai = applicationIdentifier(text, position);
+            if (ai == null)
+                return false;
+            int start = position + ai.length;
+            int end;
+            if (ai.minData == ai.maxData) {
+                end = start + ai.maxData;
+                if (end > text.length())
+                    return false;
+            } else {
+                end = text.indexOf(GROUP_SEPARATOR, start);
+                if (end < 0)
+                    end = text.length();
+            }
+            if (!isElementData(ai, text, start, end))
+                return false;
+            position = end;
+            if (position < text.length() && text.charAt(position) == GROUP_SEPARATOR)
+                position++;
+        }
+        return true;
+    }
+
+    private static boolean isPrintedElementStrings(String text, int position) {
+        while (position < text.length()) {
+            int close = text.indexOf(')', position);
+            if (text.charAt(position) != '(' || close < 0)
+                return false;
+            ApplicationIdentifier ai = applicationIdentifier(text, position + 1);
+            if (ai == null || close - position - 1 != ai.length)
+                return false;
+            int end = text.indexOf('(', close);
+            if (end < 0)
+                end = text.length();
+            if (!isElementData(ai, text, close + 1, end))
+                return false;
+            position = end;
+        }
+        return true;
+    }
+
+    // The identifier starting at position, if it is all digits and known
+    private static ApplicationIdentifier applicationIdentifier(String text, int position) {
+        for (ApplicationIdentifier ai : APPLICATION_IDENTIFIERS) {
+            if (text.startsWith(ai.prefix, position) && position + ai.length <= text.length()
+                    && isDigits(text, position, position + ai.length))
+                return ai;
+        }
+        return null;
+    }
+
+    private static boolean isElementData(ApplicationIdentifier ai, String text, int start, int end) {
+        int length = end - start;
+        if (length < ai.minData || length > ai.maxData)
+            return false;
+        if (ai.numeric) {
+            if (!isDigits(text, start, end))
+                return false;
+        } else {
+            // GS1 encodable characters are printable ASCII
+            for (int i = start; i < end; i++) {
+                char c = text.charAt(i);
+                if (c <= ' ' || c > '~')
+                    return false;
+            }
+        }
+        return !ai.checkDigit || hasMod10CheckDigit(text, start, end);
+    }
+}
@@ -0,0 +1,267 @@
+package com.bitpay.cordova.qrscanner;
+
+import com.google.zxing.LuminanceSource;
+import com.google.zxing.Result;
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+/**
+ * The platform independent part of the scanner: the decoder configuration and scan region
+ * selected by the prepare/scan options, decoding of frames, encoding of results and the rules
+ * of single and continuous scans. It depends on ZXing core and org.json only, so it runs (and can
+ * be tested and benchmarked) on any JVM; QRScanner feeds it the camera preview on Android.
+ *
+ * Configuration and scan state are changed from one thread at a time (the plugin's command
+ * thread). Frames are decoded on other threads, each with a decoder of its own.
+ */
+public final class ScanEngine {
+
+    /**
+     * What to do with the result of a frame, see {@link #onResult}.
+     */
+    public enum Outcome {
+        // No scan is running, or a continuous scan's code was reported meanwhile
+        IGNORE,
+        // A continuous scan found a code, and keeps scanning
+        DELIVER,
+        // A single scan found a code, and is done
+        FINISH,
+        // A single scan's code was reported meanwhile, and the scan has to be started again
+        RESCAN
+    }
+
+    private volatile DecoderConfig config = DecoderConfig.DEFAULT;
+    private final RegionDecoderFactory frameDecoderFactory = new RegionDecoderFactory(DecoderConfig.DEFAULT.getDecoderFactory());
+    private final ResultEncoder resultEncoder = new ResultEncoder();
+    private final DuplicateFilter duplicates = new DuplicateFilter();
+    // Null accepts every code
+    private volatile ResultFilter filter;
+    private final FrameDecoderFactory filteringDecoderFactory = new FrameDecoderFactory() {
+        @Override
+        public FrameDecoder createDecoder() {
+            return new FilteringDecoder(frameDecoderFactory.createDecoder());
+        }
+    };
+    private volatile boolean scanning;
+    private volatile boolean continuous;
+
+    /**
+     * Applies the options of a prepare/scan call: an options object and/or "only-2d". Without
+     * decoder options, the current configuration is kept, or with resetWhenAbsent (prepare) the
+     * default restored. A "region" option replaces the scan region, an "accept" option the
+     * {@link ResultFilter}, the duplicateTtl and duplicateCapacity options configure the
+     * {@link DuplicateFilter}.
+     *
+     * @throws IllegalArgumentException if the options are invalid, nothing is applied then
+     */
+    public void configure(JSONArray args, boolean resetWhenAbsent) {
+        DecoderConfig config = DecoderConfig.fromArgs(args);
+        ScanRegion region = null;
+        boolean hasRegion = false;
+        ResultFilter filter = null;
+        boolean hasFilter = false;
+        for (int i = 0; i < args.length(); i++) {
+            JSONObject options = args.optJSONObject(i);
+            if (options == null)
+                continue;
+            if (options.has("region")) {
+                region = parseRegion(options.opt("region"));
+                hasRegion = true;
+            }
+            if (options.has("accept")) {
+                filter = ResultFilter.fromJSON(options.opt("accept"));
+                hasFilter = true;
+            }
+            DuplicateFilter.validate(options);
+        }
+
+        for (int i = 0; i < args.length(); i++) {
+            JSONObject options = args.optJSONObject(i);
+            if (options != null)
+                duplicates.configure(options);
+        }
+        if (hasRegion)
+            frameDecoderFactory.setRegion(region);
+        if (hasFilter)
+            this.filter = filter;
+        if (config != null)
+            this.config = config;
+        else if (resetWhenAbsent)
+            this.config = DecoderConfig.DEFAULT;
+    }
+
+    /**
+     * Checks the options of a prepare/scan call without applying them, see {@link #configure}.
+     *
+     * @throws IllegalArgumentException if the options are invalid
+     */
+    public void validate(JSONArray args) {
+        DecoderConfig.fromArgs(args);
+        for (int i = 0; i < args.length(); i++) {
+            JSONObject options = args.optJSONObject(i);
+            if (options == null)
+                continue;
+            if (options.has("region"))
+                parseRegion(options.opt("region"));
+            if (options.has("accept"))
+                ResultFilter.fromJSON(options.opt("accept"));
+            DuplicateFilter.validate(options);
+        }
+    }
+
+    DecoderConfig getConfig() {
+        return config;
+    }
+
+    /**
+     * The configuration given by the options in args, else the current one.
+     *
+     * @throws IllegalArgumentException if the options are invalid
+     */
+    DecoderConfig getConfig(JSONArray args) {
+        DecoderConfig options = DecoderConfig.fromArgs(args);
+        return options != null ? options : config;
+    }
+
+    /**
+     * @param region {left, top, width, height} as fractions of the frame, or null for the default
+     * @throws IllegalArgumentException if the region is invalid
+     */
+    public void setRegion(Object region) {
+        frameDecoderFactory.setRegion(parseRegion(region));
+    }
+
+    private static ScanRegion parseRegion(Object region) {
+        if (region == null || region == JSONObject.NULL)
+            return null;
+        if (!(region instanceof JSONObject))
+            throw new IllegalArgumentException("region must be an object");
+        return ScanRegion.fromJSON((JSONObject) region);
+    }
+
+    /**
+     * The scan region and the decode time it saves, see RegionDecoderFactory.
+     */
+    public JSONObject getRegion() throws JSONException {
+        return frameDecoderFactory.toJSON();
+    }
+
+    /**
+     * Creates the decoders of preview frames. Decoders created before {@link #updateDecoder} keep
+     * the configuration they were created with, the scan region and the accept filter apply to
+     * each frame.
+     */
+    FrameDecoderFactory getFrameDecoderFactory() {
+        return filteringDecoderFactory;
+    }
+
+    /**
+     * Switches the frame decoders to the decode mode of the current configuration.
+     *
+     * @return true if it changed, so running decoders have to be replaced
+     */
+    public boolean updateDecoder() {
+        FrameDecoderFactory decoderFactory = config.getDecoderFactory();
+        if (frameDecoderFactory.getDecoderFactory() == decoderFactory)
+            return false;
+        frameDecoderFactory.setDecoderFactory(decoderFactory);
+        return true;
+    }
+
+    /**
+     * A decoder for the frames of one thread, with the current decode mode and the scan region.
+     */
+    public FrameDecoder newFrameDecoder() {
+        updateDecoder();
+        return filteringDecoderFactory.createDecoder();
+    }
+
+    /**
+     * Decodes a still image (the whole image, with a single chance) with the current configuration.
+     */
+    public Result decodeImage(LuminanceSource image) {
+        return decodeImage(image, config);
+    }
+
+    static Result decodeImage(LuminanceSource image, DecoderConfig config) {
+        return config.createImageDecoder().decode(image);
+    }
+
+    /**
+     * The result as the JSON string sent to the scan callbacks, with the configured result fields.
+     */
+    public synchronized String encode(Result result) {
+        return resultEncoder.encode(result, config.resultFields);
+    }
+
+    public void setContinuous(boolean continuous) {
+        this.continuous = continuous;
+    }
+
+    public boolean isContinuous() {
+        return continuous;
+    }
+
+    public void startScan() {
+        scanning = true;
+    }
+
+    public void stopScan() {
+        scanning = false;
+    }
+
+    public boolean isScanning() {
+        return scanning;
+    }
+
+    /**
+     * Forgets the codes seen, so that each is reported again.
+     */
+    public void clearDuplicates() {
+        duplicates.clear();
+    }
+
+    /**
+     * Applies the rules of the running scan to the code found in a frame. A single scan ends with the first code, a continuous one runs until stopped. Rejected and
+     * duplicate codes never get here, see {@link FilteringDecoder}. Codes are remembered as
+     * reported (see {@link DuplicateFilter}) only here, when a scan takes them.
+     */
+    public Outcome onResult(Result result) {
+        if (!scanning)
+            return Outcome.IGNORE;
+        // Decoded again before the earlier frame with these codes was reported
+        if (duplicates.report(result))
+            return continuous ? Outcome.IGNORE : Outcome.RESCAN;
+        if (continuous)
+            return Outcome.DELIVER;
+        scanning = false;
+        return Outcome.FINISH;
+    }
+
+    /**
+     * Drops the codes rejected by the accept filter, then frames whose codes were all reported
+     * within the duplicate TTL. Such a frame counts as a frame without a code: the decoder keeps looking,
+     * without the result leaving the decoder thread (or a single scan having to be re-armed).
+     */
+    private final class FilteringDecoder implements FrameDecoder {
+        private final FrameDecoder decoder;
+
+        FilteringDecoder(FrameDecoder decoder) {
+            this.decoder = decoder;
+        }
+
+        @Override
+        public Result decode(LuminanceSource frame) {
+            Result result = decoder.decode(frame);
+            if (result == null)
+                return null;
+            ResultFilter accept = filter;
+            if (accept != null)
+                result = accept.filter(result);
+            if (result == null || duplicates.isDuplicate(result))
+                return null;
+            return result;
+        }
+    }
+}
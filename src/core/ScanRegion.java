@@ -0,0 +1,87 @@
+package com.bitpay.cordova.qrscanner;
+
+import com.google.zxing.LuminanceSource;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+/**
+ * Decode region, as fractions of the preview frame.
+ */
+final class ScanRegion {
+
+    final double left;
+    final double top;
+    final double width;
+    final double height;
+
+    ScanRegion(double left, double top, double width, double height) {
+        if (!(left >= 0 && top >= 0 && width > 0 && height > 0 && left + width <= 1 && top + height <= 1))
+            throw new IllegalArgumentException("region must lie within the preview: " + left + "," + top + "," + width + "," + height);
+        this.left = left;
+        this.top = top;
+        this.width = width;
+        this.height = height;
+    }
+
+    /**
+     * @throws IllegalArgumentException if the region is missing a property or lies outside the preview
+     */
+    static ScanRegion fromJSON(JSONObject region) {
+        try {
+            return new ScanRegion(region.getDouble("left"), region.getDouble("top"),
+                    region.getDouble("width"), region.getDouble("height"));
+        } catch (JSONException e) {
+            throw new IllegalArgumentException("region requires numeric left, top, width and height", e);
+        }
+    }
+
+    /**
+     * The region in pixels of a frame of the given size, as {left, top, width, height}.
+     */
+    int[] bounds(int frameWidth, int frameHeight) {
+        int cropLeft = (int) (left * frameWidth);
+        int cropTop = (int) (top * frameHeight);
+        int cropWidth = Math.max(1, Math.min(frameWidth - cropLeft, (int) Math.round(width * frameWidth)));
+        int cropHeight = Math.max(1, Math.min(frameHeight - cropTop, (int) Math.round(height * frameHeight)));
+        return new int[]{cropLeft, cropTop, cropWidth, cropHeight};
+    }
+
+    /**
+     * The area BarcodeView decodes by default: a centered square, inset by a tenth of the
+     * shorter side. Null if the frame is too small to inset.
+     */
+    static int[] defaultBounds(int frameWidth, int frameHeight) {
+        int margin = (int) (Math.min(frameWidth, frameHeight) * 0.1);
+        int cropWidth = frameWidth - 2 * margin;
+        int cropHeight = frameHeight - 2 * margin;
+        int cropLeft = margin;
+        int cropTop = margin;
+        if (cropHeight > cropWidth) {
+            int inset = (cropHeight - cropWidth) / 2;
+            cropTop += inset;
+            cropHeight -= 2 * inset;
+        }
+        if (cropWidth <= 0 || cropHeight <= 0)
+            return null;
+        return new int[]{cropLeft, cropTop, cropWidth, cropHeight};
+    }
+
+    /**
+     * Crops the frame to the bounds. For the planar YUV preview frames the crop only
+     * narrows the window onto the frame data, so the binarizer sees just the region.
+     */
+    static LuminanceSource crop(LuminanceSource source, int[] bounds) {
+        if (bounds == null || !source.isCropSupported())
+            return source;
+        return source.crop(bounds[0], bounds[1], bounds[2], bounds[3]);
+    }
+
+    JSONObject toJSON() throws JSONException {
+        JSONObject region = new JSONObject();
+        region.put("left", left);
+        region.put("top", top);
+        region.put("width", width);
+        region.put("height", height);
+        return region;
+    }
+}
@@ -12,6 +12,9 @@ exports.defineAutoTests = function() {
       it('`scan` method should exist', function() {
         expect(typeof window.QRScanner.scan).toBe('function');
       });
+      it('`scanContinuous` method should exist', function() {
+        expect(typeof window.QRScanner.scanContinuous).toBe('function');
+      });
       it('`cancelScan` method should exist', function() {
         expect(typeof window.QRScanner.cancelScan).toBe('function');
       });
@@ -24,6 +27,9 @@ exports.defineAutoTests = function() {
       it('`pausePreview` method should exist', function() {
         expect(typeof window.QRScanner.pausePreview).toBe('function');
       });
+      it('`standby` method should exist', function() {
+        expect(typeof window.QRScanner.standby).toBe('function');
+      });
       it('`resumePreview` method should exist', function() {
         expect(typeof window.QRScanner.resumePreview).toBe('function');
       });
@@ -45,12 +51,39 @@ exports.defineAutoTests = function() {
       it('`useBackCamera` method should exist', function() {
         expect(typeof window.QRScanner.useBackCamera).toBe('function');
       });
+      it('`setScanRegion` method should exist', function() {
+        expect(typeof window.QRScanner.setScanRegion).toBe('function');
+      });
+      it('`scanImage` method should exist', function() {
+        expect(typeof window.QRScanner.scanImage).toBe('function');
+      });
+      it('`scanImages` method should exist', function() {
+        expect(typeof window.QRScanner.scanImages).toBe('function');
+      });
+      it('`getScanRegion` method should exist', function() {
+        expect(typeof window.QRScanner.getScanRegion).toBe('function');
+      });
+      it('`getCameraCapabilities` method should exist', function() {
+        expect(typeof window.QRScanner.getCameraCapabilities).toBe('function');
+      });
+      it('`getMetrics` method should exist', function() {
+        expect(typeof window.QRScanner.getMetrics).toBe('function');
+      });
+      it('`resetMetrics` method should exist', function() {
+        expect(typeof window.QRScanner.resetMetrics).toBe('function');
+      });
       it('`openSettings` method should exist', function() {
         expect(typeof window.QRScanner.openSettings).toBe('function');
       });
       it('`getStatus` method should exist', function() {
         expect(typeof window.QRScanner.openSettings).toBe('function');
       });
+      it('`watchStatus` method should exist', function() {
+        expect(typeof window.QRScanner.watchStatus).toBe('function');
+      });
+      it('`unwatchStatus` method should exist', function() {
+        expect(typeof window.QRScanner.unwatchStatus).toBe('function');
+      });
     });
 
     describe('QRScanner `status` object', function() {
@@ -72,6 +105,54 @@ exports.defineAutoTests = function() {
         });
       });
     });
+
+    describe('QRScanner camera capabilities', function() {
+      it('`getCameraCapabilities` should return the capabilities object', function(done) {
+        // Only implemented on Android
+        if (!window.cordova || window.cordova.platformId !== 'android') {
+          done();
+          return;
+        }
+        window.QRScanner.getCameraCapabilities(function(err, capabilities) {
+          expect(err).toBeNull();
+          expect(typeof capabilities.hasCamera).toBe('boolean');
+          expect(Array.isArray(capabilities.cameras)).toBe(true);
+          done();
+        });
+      });
+    });
+
+    describe('QRScanner metrics', function() {
+      // Only implemented on Android
+      var android = window.cordova && window.cordova.platformId === 'android';
+      it('`getMetrics` should return the metrics object', function(done) {
+        if (!android) {
+          done();
+          return;
+        }
+        window.QRScanner.getMetrics(function(err, metrics) {
+          expect(err).toBeNull();
+          expect(typeof metrics.since).toBe('number');
+          expect(typeof metrics.scans).toBe('number');
+          expect(typeof metrics.framesDecoded).toBe('number');
+          expect(typeof metrics.scanTime.count).toBe('number');
+          done();
+        });
+      });
+      it('`resetMetrics` should complete', function(done) {
+        if (!android) {
+          done();
+          return;
+        }
+        window.QRScanner.resetMetrics(function(err) {
+          expect(err).toBeNull();
+          window.QRScanner.getMetrics(function(err, metrics) {
+            expect(metrics.scans).toBe(0);
+            done();
+          });
+        });
+      });
+    });
   });
 };
 